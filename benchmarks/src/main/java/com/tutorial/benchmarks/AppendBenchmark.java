@@ -0,0 +1,58 @@
+package com.tutorial.benchmarks;
+
+import com.tutorial.collections.ConcurrentBag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+//ThreadsDemo.synchronizedCollections() vs a concurrent collection vs ConcurrentBag: many producers gathering results.
+//Each measured iteration is a fixed batch of appends into a fresh collection, so the collections can't grow
+//for the whole run and the score is the time every thread needs to push its batch
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = AppendBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = AppendBenchmark.BATCH)
+@Fork(1)
+public class AppendBenchmark {
+    static final int BATCH = 100_000;
+
+    @Param({"synchronized", "concurrentLinkedQueue", "bag"})
+    public String collection;
+
+    private Collection<Integer> target;
+    private final List<Integer> results = List.of(1, 2, 3, 4, 5, 6, 7, 8);
+
+    @Setup(Level.Iteration)
+    public void setUp(){
+        switch (collection) {
+            case "synchronized":
+                target = Collections.synchronizedCollection(new ArrayList<>());
+                break;
+            case "concurrentLinkedQueue":
+                target = new ConcurrentLinkedQueue<>();
+                break;
+            case "bag":
+                target = new ConcurrentBag<>();
+                break;
+            default:
+                throw new IllegalArgumentException(collection);
+        }
+    }
+
+    @Benchmark
+    public boolean add(){
+        return target.add(1);
+    }
+
+    //a worker handing over several results at once
+    @Benchmark
+    public boolean addAll(){
+        return target.addAll(results);
+    }
+}
@@ -0,0 +1,74 @@
+package com.tutorial.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+//Runs every benchmark once per thread count, from 1 up to the core count,
+//and writes one JMH JSON file per thread count so runs can be diffed for regressions
+//(the readWhileWriting group gets files of its own, see main())
+public class BenchmarkRunner {
+    //@Group benchmark, one reader and (threads - 1) writers
+    private static final String READ_WHILE_WRITING = CounterBenchmark.class.getName() + ".readWhileWriting";
+
+    //args: [include regex] [comma separated thread counts]
+    public static void main(String[] args) throws RunnerException {
+        var include = args.length > 0 ? args[0] : "com\\.tutorial\\.benchmarks\\..*";
+        var threadCounts = args.length > 1 ? parse(args[1]) : upToCores();
+        //JMH matches includes with find() too
+        var group = Pattern.compile(include).matcher(READ_WHILE_WRITING).find();
+
+        var results = new File("results");
+        results.mkdirs();
+        for (var threads : threadCounts) {
+            //threadGroups() applies to every benchmark of a run and breaks the ones without a @Group,
+            //so the group gets a run of its own; a single thread can't be both reader and writer
+            try {
+                run(new OptionsBuilder()
+                        .include(include)
+                        .exclude(Pattern.quote(READ_WHILE_WRITING))
+                        .threads(threads), new File(results, "threads-" + threads + ".json"));
+            } catch (NoBenchmarksException e) {
+                //the include only matched the group
+                if (!group)
+                    throw e;
+            }
+            if (group && threads > 1)
+                run(new OptionsBuilder()
+                        .include(Pattern.quote(READ_WHILE_WRITING))
+                        .threadGroups(threads - 1, 1), new File(results, "read-while-writing-threads-" + threads + ".json"));
+        }
+    }
+
+    private static void run(ChainedOptionsBuilder options, File result) throws RunnerException {
+        new Runner(options
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build()).run();
+    }
+
+    //1, 2, 4, ... plus the core count itself
+    private static List<Integer> upToCores(){
+        var cores = Runtime.getRuntime().availableProcessors();
+        var counts = new ArrayList<Integer>();
+        for (int threads = 1; threads < cores; threads *= 2)
+            counts.add(threads);
+        counts.add(cores);
+        return counts;
+    }
+
+    private static List<Integer> parse(String value){
+        var counts = new ArrayList<Integer>();
+        for (var part : value.split(","))
+            counts.add(Integer.parseInt(part.trim()));
+        return counts;
+    }
+}
@@ -0,0 +1,71 @@
+package com.tutorial.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//What a chain of stages costs by itself: the same trivial work run inline, through thenApply, or hopping threads each stage
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletableFutureBenchmark {
+    @Param({"1", "4", "16"})
+    public int stages;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    //baseline, no futures at all
+    @Benchmark
+    public int plainCalls(){
+        int value = 0;
+        for (int i = 0; i < stages; i++)
+            value = step(value);
+        return value;
+    }
+
+    @Benchmark
+    public int completedChain(){
+        var future = CompletableFuture.completedFuture(0);
+        for (int i = 0; i < stages; i++)
+            future = future.thenApply(CompletableFutureBenchmark::step);
+        return future.join();
+    }
+
+    @Benchmark
+    public int asyncSourceChain(){
+        var future = CompletableFuture.supplyAsync(() -> 0, executor);
+        for (int i = 0; i < stages; i++)
+            future = future.thenApply(CompletableFutureBenchmark::step);
+        return future.join();
+    }
+
+    //every stage handed to the pool, like thenApplyAsync in ExecutorsDemo
+    @Benchmark
+    public int asyncEveryStage(){
+        var future = CompletableFuture.supplyAsync(() -> 0, executor);
+        for (int i = 0; i < stages; i++)
+            future = future.thenApplyAsync(CompletableFutureBenchmark::step, executor);
+        return future.join();
+    }
+
+    private static int step(int value){
+        return value * 31 + 7;
+    }
+}
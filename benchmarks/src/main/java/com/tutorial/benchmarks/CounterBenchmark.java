@@ -0,0 +1,47 @@
+package com.tutorial.benchmarks;
+
+import com.tutorial.threads.Counter;
+import com.tutorial.threads.CounterStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//DownloadStatus' trade-off: how each CounterStrategy holds up as more threads increment the same counter
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark {
+    @Param({"SYNCHRONIZED", "LOCK", "ATOMIC", "ADDER", "STRIPED", "CONFINED"})
+    public CounterStrategy strategy;
+
+    private Counter counter;
+
+    @Setup(Level.Iteration)
+    public void setUp(){
+        counter = strategy.create();
+    }
+
+    @Benchmark
+    public void increment(){
+        counter.increment();
+    }
+
+    //a reader polling progress while the others write;
+    //BenchmarkRunner runs the group on its own with (threads - 1) writers, these counts only apply to plain JMH runs
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public void writer(){
+        counter.increment();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public long reader(){
+        return counter.sum();
+    }
+}
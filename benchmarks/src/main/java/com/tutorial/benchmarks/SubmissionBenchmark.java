@@ -0,0 +1,59 @@
+package com.tutorial.benchmarks;
+
+import com.tutorial.executors.AdaptiveThreadPool;
+import com.tutorial.executors.VirtualThreads;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+//Round trip of one tiny task through the pool shapes ExecutorsDemo uses: submit, run, get
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubmissionBenchmark {
+    @Param({"fixed", "cached", "adaptive", "forkJoin", "virtual"})
+    public String pool;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        var cores = Runtime.getRuntime().availableProcessors();
+        switch (pool) {
+            case "fixed":
+                executor = Executors.newFixedThreadPool(cores);
+                break;
+            case "cached":
+                executor = Executors.newCachedThreadPool();
+                break;
+            case "adaptive":
+                executor = new AdaptiveThreadPool(1, 64);
+                break;
+            case "forkJoin":
+                executor = new ForkJoinPool(cores);
+                break;
+            case "virtual":
+                //older JDKs: falls back to a thread per task, same shape
+                executor = VirtualThreads.isAvailable()
+                        ? VirtualThreads.newPerTaskExecutor()
+                        : Executors.newCachedThreadPool();
+                break;
+            default:
+                throw new IllegalArgumentException(pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Integer submitAndGet() throws Exception {
+        return executor.submit(() -> 1).get();
+    }
+}
@@ -0,0 +1,221 @@
+package com.tutorial.collections;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+//Append-only collection for gathering results from many threads.
+//Every thread appends to its own segment, so producers never contend and addAll needs no lock:
+//the elements are written first and then published at once by one volatile size update.
+//Iterators, spliterators and streams work on a snapshot taken when they are created,
+//later appends don't show up and can't break them. Removing is not supported
+public class ConcurrentBag<E> extends AbstractCollection<E> {
+    private final ConcurrentLinkedQueue<Segment> segments = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Segment> local = ThreadLocal.withInitial(() -> {
+        var segment = new Segment();
+        segments.add(segment);
+        return segment;
+    });
+
+    @Override
+    public boolean add(E element) {
+        local.get().append(element);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        if (elements.isEmpty())
+            return false;
+        local.get().appendAll(elements.toArray());
+        return true;
+    }
+
+    @Override
+    public int size() {
+        long total = 0;
+        for (var segment : segments)
+            total += segment.size;
+        return (int) Math.min(Integer.MAX_VALUE, total);
+    }
+
+    //every segment's published prefix, no copying: writers only ever write past it
+    private List<Part> snapshot(){
+        var parts = new ArrayList<Part>();
+        for (var segment : segments) {
+            //size first: the array read afterwards holds at least that many elements
+            var size = segment.size;
+            if (size > 0)
+                parts.add(new Part(segment.elements, size));
+        }
+        return parts;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        var parts = snapshot();
+        return new Iterator<>() {
+            private int part;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                while (part < parts.size() && index >= parts.get(part).length) {
+                    part++;
+                    index = 0;
+                }
+                return part < parts.size();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return (E) parts.get(part).array[index++];
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        var parts = snapshot();
+        return parts.isEmpty()
+                ? Spliterators.emptySpliterator()
+                : new SnapshotSpliterator<>(parts, 0, 0, parts.size() - 1, parts.get(parts.size() - 1).length);
+    }
+
+    @Override
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    //single writer (the owning thread), any number of readers
+    private static class Segment {
+        private volatile Object[] elements = new Object[16];
+        private volatile int size;
+
+        void append(Object element){
+            var array = ensureCapacity(size + 1);
+            array[size] = element;
+            //publishes the element
+            size = size + 1;
+        }
+
+        void appendAll(Object[] added){
+            var array = ensureCapacity(size + added.length);
+            System.arraycopy(added, 0, array, size, added.length);
+            //publishes all of them at once
+            size = size + added.length;
+        }
+
+        private Object[] ensureCapacity(int needed){
+            var array = elements;
+            if (needed > array.length) {
+                //readers keep using the old array, it still holds everything they know about
+                array = Arrays.copyOf(array, Math.max(needed, array.length * 2));
+                elements = array;
+            }
+            return array;
+        }
+    }
+
+    private static class Part {
+        final Object[] array;
+        final int length;
+
+        Part(Object[] array, int length) {
+            this.array = array;
+            this.length = length;
+        }
+    }
+
+    //walks the snapshot from [part, index] to [lastPart, lastIndex); splits by parts first, then inside one part
+    private static class SnapshotSpliterator<E> implements Spliterator<E> {
+        private final List<Part> parts;
+        private int part;
+        private int index;
+        private final int lastPart;
+        private final int lastIndex;
+
+        SnapshotSpliterator(List<Part> parts, int part, int index, int lastPart, int lastIndex) {
+            this.parts = parts;
+            this.part = part;
+            this.index = index;
+            this.lastPart = lastPart;
+            this.lastIndex = lastIndex;
+        }
+
+        private int endOf(int p){
+            return p == lastPart ? lastIndex : parts.get(p).length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (part <= lastPart) {
+                if (index < endOf(part)) {
+                    action.accept((E) parts.get(part).array[index++]);
+                    return true;
+                }
+                part++;
+                index = 0;
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            for (; part <= lastPart; part++, index = 0) {
+                var array = parts.get(part).array;
+                var end = endOf(part);
+                for (; index < end; index++)
+                    action.accept((E) array[index]);
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            if (part < lastPart) {
+                //give away the first half of the parts
+                var middle = part + (lastPart - part) / 2;
+                var prefix = new SnapshotSpliterator<E>(parts, part, index, middle, parts.get(middle).length);
+                part = middle + 1;
+                index = 0;
+                return prefix;
+            }
+            if (part == lastPart && lastIndex - index > 1) {
+                //one part left: split its index range
+                var middle = index + (lastIndex - index) / 2;
+                var prefix = new SnapshotSpliterator<E>(parts, part, index, part, middle);
+                index = middle;
+                return prefix;
+            }
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = 0;
+            for (int p = part; p <= lastPart; p++)
+                size += endOf(p) - (p == part ? index : 0);
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return SIZED | SUBSIZED | IMMUTABLE;
+        }
+    }
+}
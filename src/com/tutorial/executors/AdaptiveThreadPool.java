@@ -0,0 +1,218 @@
+package com.tutorial.executors;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+//Thread pool that starts with one thread per core and resizes itself between minThreads and maxThreads.
+//Every sampling period it looks at:
+// - blocking ratio (wall time not spent on the CPU): threads = cores / (1 - blockingRatio)
+// - queue wait: if tasks wait longer than maxQueueWait, add threads even if the formula says otherwise
+//Pure CPU work stays at about one thread per core, blocking work gets more threads
+public class AdaptiveThreadPool extends ThreadPoolExecutor {
+    public static final Duration DEFAULT_SAMPLE_PERIOD = Duration.ofMillis(500);
+    public static final Duration DEFAULT_MAX_QUEUE_WAIT = Duration.ofMillis(20);
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final int minThreads;
+    private final int maxThreads;
+    private final long maxQueueWaitNanos;
+    private final ScheduledFuture<?> sampler;
+
+    //measurements of the current sampling period
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    //only tasks whose CPU time could be measured count towards the blocking ratio
+    private final LongAdder measuredWallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final ThreadLocal<long[]> startTimes = ThreadLocal.withInitial(() -> new long[2]);
+
+    private volatile double blockingRatio;
+    private volatile long averageQueueWaitNanos;
+
+    public AdaptiveThreadPool(int minThreads, int maxThreads, Duration samplePeriod, Duration maxQueueWait, ThreadFactory threadFactory) {
+        super(initialSize(minThreads, maxThreads),
+                initialSize(minThreads, maxThreads),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory);
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        //idle periods aren't sampled, let unused threads go away on their own
+        allowCoreThreadTimeOut(true);
+        this.sampler = Sampler.start(this, samplePeriod.toNanos());
+    }
+
+    //checked before super() gets to use them: one thread per core, within the bounds
+    private static int initialSize(int minThreads, int maxThreads){
+        if (minThreads < 1 || maxThreads < minThreads)
+            throw new IllegalArgumentException("expected 1 <= minThreads <= maxThreads");
+        return clamp(Runtime.getRuntime().availableProcessors(), minThreads, maxThreads);
+    }
+
+    public AdaptiveThreadPool(int minThreads, int maxThreads) {
+        this(minThreads, maxThreads, DEFAULT_SAMPLE_PERIOD, DEFAULT_MAX_QUEUE_WAIT, Executors.defaultThreadFactory());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedTask(command, System.nanoTime()));
+    }
+
+    //the caller's tasks, not the TimedTask wrappers
+    @Override
+    public List<Runnable> shutdownNow() {
+        var tasks = super.shutdownNow();
+        var unwrapped = new ArrayList<Runnable>(tasks.size());
+        for (var task : tasks)
+            unwrapped.add(task instanceof TimedTask ? ((TimedTask) task).task : task);
+        return unwrapped;
+    }
+
+    //the queue holds wrappers, find the one around this task
+    @Override
+    public boolean remove(Runnable task) {
+        for (var queued : getQueue()) {
+            if (queued instanceof TimedTask && ((TimedTask) queued).task == task)
+                return super.remove(queued);
+        }
+        return super.remove(task);
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        if (runnable instanceof TimedTask)
+            queueWaitNanos.add(System.nanoTime() - ((TimedTask) runnable).enqueuedAt);
+        var start = startTimes.get();
+        start[0] = System.nanoTime();
+        start[1] = cpuTime();
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        var start = startTimes.get();
+        var cpuEnd = cpuTime();
+        if (start[1] >= 0 && cpuEnd >= 0) {
+            measuredWallNanos.add(System.nanoTime() - start[0]);
+            cpuNanos.add(cpuEnd - start[1]);
+        }
+        tasks.increment();
+        super.afterExecute(runnable, throwable);
+    }
+
+    @Override
+    protected void terminated() {
+        sampler.cancel(false);
+        super.terminated();
+    }
+
+    //-1 when the JVM can't (or was told not to) measure thread CPU time
+    private static long cpuTime(){
+        if (!threadBean.isThreadCpuTimeSupported() || !threadBean.isThreadCpuTimeEnabled())
+            return -1;
+        return threadBean.getCurrentThreadCpuTime();
+    }
+
+    private void resize(){
+        var count = tasks.sumThenReset();
+        var wait = queueWaitNanos.sumThenReset();
+        var wall = measuredWallNanos.sumThenReset();
+        var cpu = cpuNanos.sumThenReset();
+        if (count == 0 || isShutdown())
+            return;
+        averageQueueWaitNanos = wait / count;
+
+        var current = getCorePoolSize();
+        //no CPU time, no blocking ratio: keep the size the formula last gave (queue wait can still grow it)
+        var target = current;
+        if (wall > 0) {
+            blockingRatio = Math.min(0.95, Math.max(0, 1 - (double) cpu / wall));
+            var cores = Runtime.getRuntime().availableProcessors();
+            target = (int) Math.ceil(cores / (1 - blockingRatio));
+        }
+        if (averageQueueWaitNanos > maxQueueWaitNanos && !getQueue().isEmpty())
+            //tasks are piling up: grow at least a bit
+            target = Math.max(target, current + Math.max(1, current / 4));
+        else if (getQueue().isEmpty() && target < current)
+            //shrink slowly so a short lull doesn't throw away all threads
+            target = Math.max(target, current - Math.max(1, current / 4));
+        setPoolSize(clamp(target, minThreads, maxThreads));
+    }
+
+    private void setPoolSize(int size){
+        //core must never be above max at any point
+        if (size > getMaximumPoolSize()) {
+            setMaximumPoolSize(size);
+            setCorePoolSize(size);
+        } else if (size < getCorePoolSize()) {
+            setCorePoolSize(size);
+            setMaximumPoolSize(size);
+        }
+    }
+
+    private static int clamp(int value, int min, int max){
+        return Math.max(min, Math.min(max, value));
+    }
+
+    //share of task wall time spent off the CPU in the last period (0 = pure CPU work)
+    public double getBlockingRatio() {
+        return blockingRatio;
+    }
+
+    public Duration getAverageQueueWait() {
+        return Duration.ofNanos(averageQueueWaitNanos);
+    }
+
+    //the shared timer thread lives forever: holding the pool strongly would keep a pool nobody shut down
+    //(and every thread it regrows) around for good. Once the pool is garbage the sampler cancels itself
+    private static class Sampler implements Runnable {
+        private final WeakReference<AdaptiveThreadPool> pool;
+        private volatile ScheduledFuture<?> future;
+
+        private Sampler(AdaptiveThreadPool pool) {
+            this.pool = new WeakReference<>(pool);
+        }
+
+        static ScheduledFuture<?> start(AdaptiveThreadPool pool, long periodNanos){
+            var sampler = new Sampler(pool);
+            sampler.future = AsyncTimer.scheduleAtFixedRate(sampler, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+            return sampler.future;
+        }
+
+        @Override
+        public void run() {
+            var pool = this.pool.get();
+            if (pool != null) {
+                pool.resize();
+                return;
+            }
+            //future is only unset if this runs before start() returns, a later run cancels then
+            var future = this.future;
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+
+    private static class TimedTask implements Runnable {
+        final Runnable task;
+        final long enqueuedAt;
+
+        TimedTask(Runnable task, long enqueuedAt) {
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+//Caches the futures returned by an async loader:
+// - concurrent misses for the same key share one in-flight load (single flight)
+// - entries expire after ttl, the oldest inserted entries are evicted above maxSize
+// - a hit older than refreshAfter reloads in the background and keeps serving the old value meanwhile
+//Failed loads are not cached. Callers get their own copy of the shared future,
+//so one caller cancelling (e.g. through Deadline.bound) doesn't cancel the load for everybody
+public class AsyncLoadingCache<K, V> {
+    private final Function<K, CompletableFuture<V>> loader;
+    private final long ttlNanos;
+    private final long refreshAfterNanos;
+    private final int maxSize;
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    //insertion order for eviction, may hold stale entries that were already replaced
+    private final Queue<Node<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger insertionOrderSize = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    //refreshAfter == null disables refresh-ahead
+    public AsyncLoadingCache(Function<K, CompletableFuture<V>> loader, Duration ttl, Duration refreshAfter, int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be positive");
+        this.loader = loader;
+        this.ttlNanos = ttl.toNanos();
+        this.refreshAfterNanos = refreshAfter == null ? Long.MAX_VALUE : refreshAfter.toNanos();
+        this.maxSize = maxSize;
+    }
+
+    public AsyncLoadingCache(Function<K, CompletableFuture<V>> loader, Duration ttl, int maxSize) {
+        this(loader, ttl, null, maxSize);
+    }
+
+    public CompletableFuture<V> get(K key){
+        var entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.future.isDone()) {
+                coalesced.increment();
+                return entry.future.copy();
+            }
+            var age = System.nanoTime() - entry.loadedAt;
+            //failed or cancelled entries are never served, only a load that completed normally is a hit
+            if (age < ttlNanos && !entry.future.isCompletedExceptionally()) {
+                hits.increment();
+                if (age >= refreshAfterNanos && entry.refreshing.compareAndSet(false, true))
+                    refresh(key, entry);
+                return entry.future.copy();
+            }
+            //expired or failed
+            entries.remove(key, entry);
+        }
+        return load(key);
+    }
+
+    private CompletableFuture<V> load(K key){
+        var created = new Entry<V>(new CompletableFuture<>());
+        var entry = entries.putIfAbsent(key, created);
+        if (entry != null) {
+            //somebody else started loading (or finished) in the meantime
+            coalesced.increment();
+            return entry.future.copy();
+        }
+        misses.increment();
+        track(key, created);
+        evictIfNeeded();
+
+        startLoad(key).whenComplete((value, e) -> {
+            if (e == null) {
+                created.loadedAt = System.nanoTime();
+                created.future.complete(value);
+            } else {
+                entries.remove(key, created);
+                created.future.completeExceptionally(e);
+            }
+        });
+        return created.future.copy();
+    }
+
+    private void refresh(K key, Entry<V> current){
+        refreshes.increment();
+        startLoad(key).whenComplete((value, e) -> {
+            if (e != null) {
+                //keep serving the old value until it expires, try again on a later hit
+                current.refreshing.set(false);
+                return;
+            }
+            var fresh = new Entry<V>(CompletableFuture.completedFuture(value));
+            fresh.loadedAt = System.nanoTime();
+            if (entries.replace(key, current, fresh))
+                track(key, fresh);
+        });
+    }
+
+    private CompletableFuture<V> startLoad(K key){
+        try {
+            return loader.apply(key);
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void track(K key, Entry<V> entry){
+        insertionOrder.add(new Node<>(key, entry));
+        //expired and refreshed entries leave stale nodes behind, drop them once they pile up
+        if (insertionOrderSize.incrementAndGet() > 2 * maxSize) {
+            var nodes = insertionOrder.iterator();
+            while (nodes.hasNext()) {
+                var node = nodes.next();
+                if (entries.get(node.key) != node.entry) {
+                    nodes.remove();
+                    insertionOrderSize.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void evictIfNeeded(){
+        while (entries.size() > maxSize) {
+            var oldest = insertionOrder.poll();
+            if (oldest == null)
+                return;
+            insertionOrderSize.decrementAndGet();
+            if (entries.remove(oldest.key, oldest.entry))
+                evictions.increment();
+        }
+    }
+
+    public void invalidate(K key){
+        entries.remove(key);
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    //callers that joined a load already in flight instead of starting their own
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static class Entry<V> {
+        final CompletableFuture<V> future;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        volatile long loadedAt;
+
+        Entry(CompletableFuture<V> future) {
+            this.future = future;
+        }
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        final Entry<V> entry;
+
+        Node(K key, Entry<V> entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
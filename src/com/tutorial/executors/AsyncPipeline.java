@@ -0,0 +1,115 @@
+package com.tutorial.executors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Fluent wrapper over a CompletableFuture chain where every stage declares how expensive it is
+//and the pipeline decides where it runs:
+// - TRIVIAL: right where the previous stage completed (or inline if it already has), never a hop
+// - CPU / BLOCKING: on the cpu / blocking executor, unless we are already running on that executor
+//getHops() counts the thread handoffs the pipeline really made
+public class AsyncPipeline<T> {
+    public enum Cost {
+        TRIVIAL,
+        CPU,
+        BLOCKING
+    }
+
+    //executor whose task the current thread is running. Set by our own dispatch only: a plain Executor
+    //can't tell us whether a thread is one of its own, so a source completed elsewhere (even on the cpu pool)
+    //costs the first CPU/BLOCKING stage a hop. supply() starts the source through dispatch to avoid that
+    private static final ThreadLocal<Executor> currentExecutor = new ThreadLocal<>();
+
+    private final CompletableFuture<T> future;
+    private final Executor cpuExecutor;
+    private final Executor blockingExecutor;
+    private final AtomicInteger hops;
+
+    private AsyncPipeline(CompletableFuture<T> future, Executor cpuExecutor, Executor blockingExecutor, AtomicInteger hops) {
+        this.future = future;
+        this.cpuExecutor = cpuExecutor;
+        this.blockingExecutor = blockingExecutor;
+        this.hops = hops;
+    }
+
+    public static <T> AsyncPipeline<T> from(CompletableFuture<T> source, Executor cpuExecutor, Executor blockingExecutor){
+        return new AsyncPipeline<>(source, cpuExecutor, blockingExecutor, new AtomicInteger());
+    }
+
+    //source as the pipeline's first stage: stages of the same cost after it run on without another hop
+    public static <T> AsyncPipeline<T> supply(Cost cost, Supplier<T> source, Executor cpuExecutor, Executor blockingExecutor){
+        return from(CompletableFuture.completedFuture(null), cpuExecutor, blockingExecutor)
+                .thenApply(cost, ignored -> source.get());
+    }
+
+    public <R> AsyncPipeline<R> thenApply(Cost cost, Function<? super T, ? extends R> stage){
+        var next = new CompletableFuture<R>();
+        future.whenComplete((value, e) -> {
+            if (e != null) {
+                next.completeExceptionally(e);
+                return;
+            }
+            dispatch(cost, () -> {
+                try {
+                    next.complete(stage.apply(value));
+                } catch (Throwable error) {
+                    next.completeExceptionally(error);
+                }
+            }, next);
+        });
+        return new AsyncPipeline<>(next, cpuExecutor, blockingExecutor, hops);
+    }
+
+    public AsyncPipeline<Void> thenAccept(Cost cost, Consumer<? super T> stage){
+        return thenApply(cost, value -> {
+            stage.accept(value);
+            return null;
+        });
+    }
+
+    public AsyncPipeline<Void> thenRun(Cost cost, Runnable stage){
+        return thenApply(cost, value -> {
+            stage.run();
+            return null;
+        });
+    }
+
+    private void dispatch(Cost cost, Runnable run, CompletableFuture<?> next){
+        var target = cost == Cost.TRIVIAL ? null : cost == Cost.CPU ? cpuExecutor : blockingExecutor;
+        //already on the right executor: running here is cheaper than a handoff
+        if (target == null || currentExecutor.get() == target) {
+            run.run();
+            return;
+        }
+        hops.incrementAndGet();
+        try {
+            target.execute(() -> {
+                var previous = currentExecutor.get();
+                currentExecutor.set(target);
+                try {
+                    run.run();
+                } finally {
+                    currentExecutor.set(previous);
+                }
+            });
+        } catch (Throwable e) {
+            next.completeExceptionally(e);
+        }
+    }
+
+    public CompletableFuture<T> toCompletableFuture() {
+        return future;
+    }
+
+    public T join(){
+        return future.join();
+    }
+
+    public int getHops() {
+        return hops.get();
+    }
+}
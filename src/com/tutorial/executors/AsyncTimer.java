@@ -0,0 +1,26 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+//One shared timer thread for delays and deadlines, so nobody has to Thread.sleep() on a worker.
+//Scheduled actions must be tiny (complete a future, submit somewhere else ...)
+public class AsyncTimer {
+    private static final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("async-timer-"));
+
+    public static ScheduledFuture<?> schedule(Runnable action, long delay, TimeUnit unit){
+        return timer.schedule(action, delay, unit);
+    }
+
+    public static ScheduledFuture<?> schedule(Runnable action, Duration delay){
+        return schedule(action, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable action, long initialDelay, long period, TimeUnit unit){
+        return timer.scheduleAtFixedRate(action, initialDelay, period, unit);
+    }
+}
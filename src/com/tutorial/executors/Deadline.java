@@ -0,0 +1,76 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//One time budget shared by every stage of a chain:
+//  deadline.bound(getUserEmailAsync()).thenCompose(deadline.bind(ExecutorsDemo::getUserPlaylistAsync))
+//each stage only gets what the previous ones left over
+public class Deadline {
+    private static final Timeouts defaultTimeouts = new Timeouts();
+
+    private final long deadlineNanos;
+    private final Timeouts timeouts;
+
+    private Deadline(long deadlineNanos, Timeouts timeouts) {
+        this.deadlineNanos = deadlineNanos;
+        this.timeouts = timeouts;
+    }
+
+    public static Deadline after(Duration budget, Timeouts timeouts){
+        return new Deadline(System.nanoTime() + budget.toNanos(), timeouts);
+    }
+
+    public static Deadline after(Duration budget){
+        return after(budget, defaultTimeouts);
+    }
+
+    public Duration remaining(){
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired(){
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    //runs the task with whatever budget is left, interrupting it when the deadline passes
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task){
+        if (isExpired())
+            return CompletableFuture.failedFuture(expired());
+        return timeouts.supplyAsync(task, remaining());
+    }
+
+    //fails with a TimeoutException when the deadline passes and cancels the source future
+    //(futures from Timeouts/Deadline get interrupted, plain CompletableFutures are only cancelled)
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future){
+        if (isExpired()) {
+            future.cancel(true);
+            return CompletableFuture.failedFuture(expired());
+        }
+        var result = new CompletableFuture<T>();
+        var timer = AsyncTimer.schedule(() -> {
+            if (result.completeExceptionally(expired()))
+                future.cancel(true);
+        }, remaining());
+        future.whenComplete((value, e) -> {
+            timer.cancel(false);
+            if (e == null)
+                result.complete(value);
+            else
+                result.completeExceptionally(e);
+        });
+        return result;
+    }
+
+    //for thenCompose: the stage's future is bound to this deadline
+    public <T, U> Function<T, CompletableFuture<U>> bind(Function<T, CompletableFuture<U>> stage){
+        return value -> isExpired() ? CompletableFuture.failedFuture(expired()) : bound(stage.apply(value));
+    }
+
+    private TimeoutException expired(){
+        return new TimeoutException("deadline expired");
+    }
+}
@@ -0,0 +1,101 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Keeps the last known exchange rate in memory and refreshes it in the background.
+//Converting is a volatile read and a multiply, no async hop per price.
+//A failed refresh keeps the previous rate
+public class ExchangeRateProvider {
+    private final Supplier<CompletableFuture<Double>> source;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final ScheduledFuture<?> refresher;
+    private final LongAdder failedRefreshes = new LongAdder();
+
+    //NaN until the first refresh succeeded
+    private volatile double rate = Double.NaN;
+    private volatile long updatedAt;
+
+    public ExchangeRateProvider(Supplier<CompletableFuture<Double>> source, Duration refreshPeriod) {
+        this.source = source;
+        var periodNanos = refreshPeriod.toNanos();
+        this.refresher = AsyncTimer.scheduleAtFixedRate(this::refresh, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    //completes after the first refresh: normally if it got a rate, exceptionally if it failed.
+    //Later refreshes keep trying either way, getRate() works as soon as one of them succeeds
+    public CompletableFuture<Void> ready(){
+        return ready.copy();
+    }
+
+    private void refresh(){
+        CompletableFuture<Double> next;
+        try {
+            next = source.get();
+        } catch (Throwable e) {
+            failed(e);
+            return;
+        }
+        next.whenComplete((value, e) -> {
+            if (e != null || value == null || value.isNaN()) {
+                failed(e != null ? e : new IllegalStateException("source returned no rate"));
+                return;
+            }
+            rate = value;
+            updatedAt = System.nanoTime();
+            ready.complete(null);
+        });
+    }
+
+    private void failed(Throwable e){
+        failedRefreshes.increment();
+        //no-op once the first refresh succeeded
+        ready.completeExceptionally(e);
+    }
+
+    public double getRate(){
+        var current = rate;
+        if (Double.isNaN(current))
+            throw new IllegalStateException("no exchange rate yet, wait for ready()");
+        return current;
+    }
+
+    public double convert(int price){
+        return price * getRate();
+    }
+
+    //whole batch with one rate read, results go to converted[0 .. prices.length)
+    public void convert(int[] prices, double[] converted){
+        if (converted.length < prices.length)
+            throw new IllegalArgumentException("converted is shorter than prices");
+        var current = getRate();
+        for (int i = 0; i < prices.length; i++)
+            converted[i] = prices[i] * current;
+    }
+
+    public void convert(double[] prices, double[] converted){
+        if (converted.length < prices.length)
+            throw new IllegalArgumentException("converted is shorter than prices");
+        var current = getRate();
+        for (int i = 0; i < prices.length; i++)
+            converted[i] = prices[i] * current;
+    }
+
+    public Duration getAge(){
+        if (Double.isNaN(rate))
+            return null;
+        return Duration.ofNanos(System.nanoTime() - updatedAt);
+    }
+
+    public long getFailedRefreshCount() {
+        return failedRefreshes.sum();
+    }
+
+    public void stop(){
+        refresher.cancel(false);
+    }
+}
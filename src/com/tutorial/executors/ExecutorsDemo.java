@@ -1,12 +1,18 @@
 package com.tutorial.executors;
 
 import java.sql.SQLOutput;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class ExecutorsDemo {
 
     public static void show(){
-        var executor = Executors.newFixedThreadPool(2);
+        //starts at one thread per core and resizes itself (see AdaptiveThreadPool)
+        var executor = new AdaptiveThreadPool(1, 64);
         System.out.println(executor.getClass().getName());
 
         try {
@@ -23,7 +29,7 @@ public class ExecutorsDemo {
     }
 
     public static void callables() {
-        var executor = Executors.newFixedThreadPool(2);
+        var executor = new AdaptiveThreadPool(1, 64);
         System.out.println(executor.getClass().getName());
 
         //Callables return values unlike runnable
@@ -47,6 +53,25 @@ public class ExecutorsDemo {
         }
     }
 
+    public static void instrumentedPool() {
+        var executor = new InstrumentedExecutorService(Executors.newFixedThreadPool(2));
+        try {
+            for (int i = 0; i < 20; i++) {
+                executor.submit(() -> {
+                    Thread.sleep(100);
+                    return 1;
+                });
+            }
+            //readable while the pool is busy
+            Thread.sleep(500);
+            System.out.println(executor.snapshot());
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public static void completableFuture() {
         //One of the implementations of the executor service interface
         //Returns the pool that is used by the completable future class
@@ -68,14 +93,30 @@ public class ExecutorsDemo {
     }
 
     public static void asynchronousAPI() {
-        var service = new MailService();
-        service.sendAsync();
-        System.out.println("Hello World");
+        //runs on its own bounded pool, not on ForkJoinPool.commonPool()
+        //other engines: new MailService(MailExecutors.virtualThreadPerTask()) or any Executor
+        try (var service = new MailService(new InstrumentedExecutorService(MailExecutors.bounded()))) {
+            service.sendAsync();
+            System.out.println("Hello World");
 
-        try {
-            Thread.sleep(5000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void batchedMails() {
+        //10 mails in batches of 4 (or whatever arrived within 100ms): 3 transport calls instead of 10
+        try (var service = new MailService(MailExecutors.bounded(), new StubMailTransport(3000), 4, 100)) {
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < 10; i++)
+                futures.add(service.sendQueued("mail " + i));
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .thenRun(() -> System.out.println("All mails were sent"))
+                    .join();
         }
     }
 
@@ -102,6 +143,24 @@ public class ExecutorsDemo {
         }
     }
 
+    public static void pipelineWithoutNeedlessHops() {
+        var cpu = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        var blocking = Executors.newCachedThreadPool();
+        //the tiny printing stages stay on the thread that completed the previous stage,
+        //the source and the two CPU stages share one hop (with from(supplyAsync(..., cpu)) it would be two:
+        //the pipeline can't tell the source finished on the cpu pool)
+        var pipeline = AsyncPipeline.supply(AsyncPipeline.Cost.CPU, () -> 20, cpu, blocking);
+        var done = pipeline
+                .thenApply(AsyncPipeline.Cost.TRIVIAL, celsius -> celsius + 1)
+                .thenApply(AsyncPipeline.Cost.CPU, ExecutorsDemo::toFahrenheit)
+                .thenApply(AsyncPipeline.Cost.CPU, f -> f * 2)
+                .thenAccept(AsyncPipeline.Cost.TRIVIAL, result -> System.out.println(result + " Thread : " + Thread.currentThread().getName()));
+        done.join();
+        System.out.println("Hops : " + done.getHops());
+        cpu.shutdown();
+        blocking.shutdown();
+    }
+
     public static void HandleExeption() {
         var future = CompletableFuture.supplyAsync(()-> {
             System.out.println("Getting data..");
@@ -122,6 +181,20 @@ public class ExecutorsDemo {
         }
     }
 
+    public static void retryOnFailure() {
+        //fails twice then succeeds, IllegalArgumentException gets up to 5 attempts
+        var attempts = new AtomicInteger();
+        var retry = new Retry()
+                .on(IllegalArgumentException.class, new Retry.Policy(5, Duration.ofMillis(100), Duration.ofSeconds(2)));
+        var data = retry.run(() -> CompletableFuture.supplyAsync(() -> {
+            System.out.println("Getting data.. attempt " + attempts.incrementAndGet());
+            if (attempts.get() < 3)
+                throw new IllegalArgumentException();
+            return 1;
+        })).join();
+        System.out.println(data);
+    }
+
     public static int toFahrenheit(int celsius){
         return (int) (celsius * 1.8) + 32;
     }
@@ -159,6 +232,24 @@ public class ExecutorsDemo {
                 .thenAccept(playlist -> System.out.println(playlist));
     }
 
+    //id -> email and email -> playlist, concurrent callers share one lookup
+    private static final AsyncLoadingCache<Integer, String> emailCache =
+            new AsyncLoadingCache<>(id -> getUserEmailAsync(), Duration.ofMinutes(5), Duration.ofMinutes(4), 10_000);
+    private static final AsyncLoadingCache<String, String> playlistCache =
+            new AsyncLoadingCache<>(ExecutorsDemo::getUserPlaylistAsync, Duration.ofMinutes(1), Duration.ofSeconds(50), 10_000);
+
+    public static void cachedComposingCompletableFuture() {
+        for (int i = 0; i < 3; i++) {
+            emailCache.get(1)
+                    .thenCompose(playlistCache::get)
+                    .thenAccept(playlist -> System.out.println(playlist))
+                    .join();
+        }
+        System.out.println("hits: " + emailCache.getHitCount()
+                + " misses: " + emailCache.getMissCount()
+                + " coalesced: " + emailCache.getCoalescedCount());
+    }
+
     public static void combineCompletableFutures() {
         //returns price
         var first = CompletableFuture.supplyAsync(() -> "20USD")
@@ -173,6 +264,48 @@ public class ExecutorsDemo {
                 .thenAccept(res -> System.out.println(res));
     }
 
+    public static void cachedExchangeRate() {
+        //the rate is fetched in the background every minute instead of once per price
+        var rates = new ExchangeRateProvider(() -> CompletableFuture.supplyAsync(() -> 0.9), Duration.ofMinutes(1));
+        rates.ready().join();
+
+        System.out.println(rates.convert(20));
+
+        int[] prices = {20, 35, 100};
+        var converted = new double[prices.length];
+        rates.convert(prices, converted);
+        System.out.println(Arrays.toString(converted));
+        rates.stop();
+    }
+
+    public static void structuredCombine() {
+        //price and rate live and die together: if one fails the other is interrupted
+        try (var scope = new TaskScope.ShutdownOnFailure()) {
+            var price = scope.fork(() -> Integer.parseInt("20USD".replace("USD", "")));
+            var exchangeRate = scope.fork(() -> {
+                LongTask.simulate();
+                return 0.9;
+            });
+            scope.join();
+            scope.throwIfFailed();
+            System.out.println(price.get() * exchangeRate.get());
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+
+        //first replica to answer wins, the slow one is interrupted
+        try (var scope = new TaskScope.ShutdownOnSuccess<Integer>()) {
+            scope.fork(() -> {
+                LongTask.simulate();
+                return 20;
+            });
+            scope.fork(() -> 21);
+            System.out.println(scope.join().result());
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
     public static void waitForManyTasks() {
         var first = CompletableFuture.supplyAsync(()-> 1);
         var second = CompletableFuture.supplyAsync(()-> 2);
@@ -193,6 +326,20 @@ public class ExecutorsDemo {
         });
     }
 
+    public static void fanOut() {
+        //1000 lookups, never more than 8 at once, and no thread waits in get()
+        var tasks = new ArrayList<Supplier<Integer>>();
+        for (int i = 0; i < 1000; i++) {
+            var n = i;
+            tasks.add(() -> n * 2);
+        }
+        var executor = Executors.newFixedThreadPool(8);
+        FanOut.gather(tasks, 8, executor, FanOut.ErrorMode.FAIL_FAST)
+                .thenAccept(results -> System.out.println("Results : " + results.size()))
+                .join();
+        executor.shutdown();
+    }
+
     public static void waitForTheFirstTask() {
         var first = CompletableFuture.supplyAsync(() ->{
             LongTask.simulate();
@@ -208,6 +355,19 @@ public class ExecutorsDemo {
         fastest.thenAccept(temp -> System.out.println(temp));
     }
 
+    public static void hedgedRequests() {
+        //ask the slow server first, if it hasn't answered in 500ms also ask the fast one
+        //the loser is interrupted instead of sleeping on a pool thread
+        Hedge.firstOf(Duration.ofMillis(500),
+                () -> {
+                    LongTask.simulate();
+                    return 20;
+                },
+                () -> 21)
+                .thenAccept(temp -> System.out.println(temp)) //Integer, not Object
+                .join();
+    }
+
     public static void handlingTimeouts() {
         var future = CompletableFuture.supplyAsync(()->{
             LongTask.simulate();
@@ -223,4 +383,31 @@ public class ExecutorsDemo {
             e.printStackTrace();
         }
     }
+
+    public static void cancellableTimeouts() {
+        var timeouts = new Timeouts();
+        //same as completeOnTimeout(1, 1, SECONDS) but LongTask is interrupted instead of sleeping 2 more seconds
+        var result = timeouts.supplyAsync(() -> {
+            LongTask.simulate();
+            return 3;
+        }, Duration.ofSeconds(1), 1).join();
+        System.out.println(result);
+
+        //email + playlist have to fit in 1 second together
+        var deadline = Deadline.after(Duration.ofSeconds(1), timeouts);
+        deadline.bound(getUserEmailAsync())
+                .thenCompose(deadline.bind(ExecutorsDemo::getUserPlaylistAsync))
+                .thenAccept(playlist -> System.out.println(playlist))
+                .join();
+
+        //give the interrupted task a moment to return
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Timed out: " + timeouts.getTimedOutCount()
+                + " stopped: " + timeouts.getStoppedCount()
+                + " abandoned: " + timeouts.getAbandonedCount());
+    }
 }
@@ -0,0 +1,134 @@
+package com.tutorial.executors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+//Runs a large number of tasks with at most `parallelism` of them in flight.
+//A finishing task starts the next one, so nothing ever blocks in get() waiting for the others
+public class FanOut {
+    public enum ErrorMode {
+        //first failure fails the result and no new tasks are started
+        FAIL_FAST,
+        //run everything, fail at the end with the first error (others are suppressed)
+        COLLECT_ALL
+    }
+
+    //results in the same order as the tasks
+    public static <T> CompletableFuture<List<T>> gather(List<? extends Supplier<T>> tasks, int parallelism,
+                                                        Executor executor, ErrorMode errorMode){
+        @SuppressWarnings("unchecked")
+        var results = (T[]) new Object[tasks.size()];
+        return stream(tasks, parallelism, executor, errorMode, (index, value) -> results[index] = value)
+                //completion of stream() happens after every write above
+                .thenApply(done -> Arrays.asList(results));
+    }
+
+    //hands every result to onResult(index, value) as soon as its task finishes
+    //onResult may be called from several threads at once
+    public static <T> CompletableFuture<Void> stream(List<? extends Supplier<T>> tasks, int parallelism,
+                                                     Executor executor, ErrorMode errorMode,
+                                                     BiConsumer<Integer, T> onResult){
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        return new Run<>(new ArrayList<>(tasks), executor, errorMode, onResult).start(parallelism);
+    }
+
+    private static class Run<T> {
+        private final List<? extends Supplier<T>> tasks;
+        private final Executor executor;
+        private final ErrorMode errorMode;
+        private final BiConsumer<Integer, T> onResult;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        //start requests not handled yet, see startNext()
+        private final AtomicInteger startRequests = new AtomicInteger();
+        //first error, the others are attached as suppressed (guarded by this)
+        private Throwable error;
+
+        Run(List<? extends Supplier<T>> tasks, Executor executor, ErrorMode errorMode, BiConsumer<Integer, T> onResult) {
+            this.tasks = tasks;
+            this.executor = executor;
+            this.errorMode = errorMode;
+            this.onResult = onResult;
+            this.remaining = new AtomicInteger(tasks.size());
+        }
+
+        CompletableFuture<Void> start(int parallelism){
+            if (tasks.isEmpty())
+                done.complete(null);
+            for (int i = 0; i < parallelism; i++)
+                startNext();
+            return done;
+        }
+
+        //only one thread at a time launches tasks, the others leave a request and return.
+        //With a direct executor (Runnable::run, caller runs ...) a task finishing inside execute()
+        //comes back here; it's picked up by the loop below instead of recursing deeper every task
+        private void startNext(){
+            if (startRequests.getAndIncrement() != 0)
+                return;
+            do {
+                launchNext();
+            } while (startRequests.decrementAndGet() != 0);
+        }
+
+        private void launchNext(){
+            if (done.isDone())
+                return;
+            var index = next.getAndIncrement();
+            if (index >= tasks.size())
+                return;
+            try {
+                executor.execute(() -> run(index));
+            } catch (RejectedExecutionException e) {
+                //the executor won't take the rest either, whatever the error mode
+                fail(e);
+                done.completeExceptionally(e);
+            }
+        }
+
+        private void run(int index){
+            Throwable error = null;
+            try {
+                onResult.accept(index, tasks.get(index).get());
+            } catch (Throwable e) {
+                error = e;
+            }
+            finished(error);
+        }
+
+        //runs on the worker that just finished, it hands itself the next task
+        private void finished(Throwable e){
+            if (e != null)
+                fail(e);
+            if (remaining.decrementAndGet() == 0)
+                finish();
+            else
+                startNext();
+        }
+
+        private synchronized void fail(Throwable e){
+            if (error == null)
+                error = e;
+            else if (error != e)
+                error.addSuppressed(e);
+            if (errorMode == ErrorMode.FAIL_FAST)
+                done.completeExceptionally(error);
+        }
+
+        private synchronized void finish(){
+            if (error != null)
+                done.completeExceptionally(error);
+            else
+                done.complete(null);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+//Hedged requests: start the first replica, and only if it hasn't answered within hedgeDelay start the next one
+//(a failure starts the next one right away). The first successful result wins and every other
+//attempt is cancelled with an interrupt, so slow losers give their threads back
+public class Hedge {
+    private static final ExecutorService defaultExecutor =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("hedge-"));
+
+    @SafeVarargs
+    public static <T> CompletableFuture<T> firstOf(Duration hedgeDelay, Supplier<T>... replicas){
+        //elements copied one by one, the generic array itself never leaves this method
+        var list = new ArrayList<Supplier<T>>(replicas.length);
+        for (var replica : replicas)
+            list.add(replica);
+        return firstOf(defaultExecutor, hedgeDelay, list);
+    }
+
+    @SafeVarargs
+    public static <T> CompletableFuture<T> firstOf(ExecutorService executor, Duration hedgeDelay, Supplier<T>... replicas){
+        var list = new ArrayList<Supplier<T>>(replicas.length);
+        for (var replica : replicas)
+            list.add(replica);
+        return firstOf(executor, hedgeDelay, list);
+    }
+
+    //executor must run tasks on their own threads (ThreadPoolExecutor, virtual threads ...)
+    //so that cancel(true) can interrupt the losers
+    public static <T> CompletableFuture<T> firstOf(ExecutorService executor, Duration hedgeDelay, List<Supplier<T>> replicas){
+        if (replicas.isEmpty())
+            throw new IllegalArgumentException("at least one replica is required");
+        if (hedgeDelay.isNegative())
+            throw new IllegalArgumentException("hedgeDelay must not be negative");
+        return new Race<>(executor, hedgeDelay, List.copyOf(replicas)).start();
+    }
+
+    private static class Race<T> {
+        private final ExecutorService executor;
+        private final Duration hedgeDelay;
+        private final List<Supplier<T>> replicas;
+        private final Future<?>[] attempts;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        //guarded by this
+        private int launched;
+        private int failed;
+        private Throwable error;
+        private ScheduledFuture<?> nextHedge;
+
+        Race(ExecutorService executor, Duration hedgeDelay, List<Supplier<T>> replicas) {
+            this.executor = executor;
+            this.hedgeDelay = hedgeDelay;
+            this.replicas = replicas;
+            this.attempts = new Future<?>[replicas.size()];
+        }
+
+        CompletableFuture<T> start(){
+            //the caller gave up (cancel, timeout ...): stop everybody
+            result.whenComplete((r, e) -> {
+                if (e != null)
+                    cancelAllExcept(-1);
+            });
+            launchNext();
+            return result;
+        }
+
+        private synchronized void launchNext(){
+            if (result.isDone() || launched == replicas.size())
+                return;
+            var index = launched++;
+            try {
+                attempts[index] = executor.submit(() -> run(index));
+            } catch (RejectedExecutionException e) {
+                onFailure(e);
+                return;
+            }
+            if (launched < replicas.size())
+                nextHedge = AsyncTimer.schedule(this::launchNext, hedgeDelay);
+        }
+
+        private void run(int index){
+            T value;
+            try {
+                value = replicas.get(index).get();
+            } catch (Throwable e) {
+                onFailure(e);
+                return;
+            }
+            //cancelled while running, the value may be garbage
+            if (Thread.currentThread().isInterrupted())
+                return;
+            if (result.complete(value))
+                cancelAllExcept(index);
+        }
+
+        private synchronized void onFailure(Throwable e){
+            if (error == null)
+                error = e;
+            else
+                error.addSuppressed(e);
+            failed++;
+            if (failed == replicas.size()) {
+                result.completeExceptionally(error);
+            } else if (failed == launched) {
+                //nobody is running anymore, don't wait for the hedge delay
+                if (nextHedge != null)
+                    nextHedge.cancel(false);
+                launchNext();
+            }
+        }
+
+        private synchronized void cancelAllExcept(int winner){
+            if (nextHedge != null)
+                nextHedge.cancel(false);
+            for (int i = 0; i < launched; i++) {
+                if (i != winner && attempts[i] != null)
+                    attempts[i].cancel(true);
+            }
+        }
+    }
+}
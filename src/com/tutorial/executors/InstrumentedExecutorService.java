@@ -0,0 +1,263 @@
+package com.tutorial.executors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Decorator that measures any ExecutorService: queue wait and run time histograms,
+//queued/active/completed/rejected counts and throughput. snapshot() can be called at any time.
+//Recording only touches atomics. submit()/invoke*() tasks carry their own enqueue time (no extra object),
+//a bare Runnable passed to execute() gets one small wrapper
+public class InstrumentedExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    //for throughput between two snapshots (guarded by this)
+    private long lastSnapshotAt = System.nanoTime();
+    private long lastCompleted;
+
+    public InstrumentedExecutorService(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        queued.increment();
+        try {
+            delegate.execute(timed(command, System.nanoTime()));
+        } catch (RejectedExecutionException e) {
+            queued.decrement();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private Runnable timed(Runnable command, long now){
+        if (command instanceof TimedFutureTask && ((TimedFutureTask<?>) command).isOwnedBy(this)) {
+            ((TimedFutureTask<?>) command).enqueuedAt = now;
+            return command;
+        }
+        return new TimedTask(command, now);
+    }
+
+    //what submit() and invoke*() wrap the callers' tasks in: timing rides along in the FutureTask they need anyway
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TimedFutureTask<>(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TimedFutureTask<>(runnable, value);
+    }
+
+    public synchronized Snapshot snapshot(){
+        var now = System.nanoTime();
+        var done = completed.sum();
+        var seconds = (now - lastSnapshotAt) / 1e9;
+        var throughput = seconds > 0 ? (done - lastCompleted) / seconds : 0;
+        lastSnapshotAt = now;
+        lastCompleted = done;
+        return new Snapshot(queued.sum(), active.sum(), done, failed.sum(), rejected.sum(), throughput,
+                queueWait.snapshot(), runTime.snapshot());
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    //the caller's tasks, not our wrappers (submit() futures are the caller's already);
+    //they never run so they leave the queued count
+    @Override
+    public List<Runnable> shutdownNow() {
+        var tasks = delegate.shutdownNow();
+        var unwrapped = new ArrayList<Runnable>(tasks.size());
+        for (var task : tasks) {
+            if (task instanceof TimedTask) {
+                queued.decrement();
+                unwrapped.add(((TimedTask) task).task);
+            } else {
+                if (task instanceof TimedFutureTask && ((TimedFutureTask<?>) task).isOwnedBy(this))
+                    queued.decrement();
+                unwrapped.add(task);
+            }
+        }
+        return unwrapped;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private long started(long enqueuedAt){
+        var start = System.nanoTime();
+        queued.decrement();
+        active.increment();
+        queueWait.record(start - enqueuedAt);
+        return start;
+    }
+
+    private void finished(long start, boolean failed){
+        if (failed)
+            this.failed.increment();
+        runTime.record(System.nanoTime() - start);
+        active.decrement();
+        completed.increment();
+    }
+
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long enqueuedAt;
+
+        TimedTask(Runnable task, long enqueuedAt) {
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            var start = started(enqueuedAt);
+            var failed = true;
+            try {
+                task.run();
+                //a FutureTask handed to execute() directly keeps its exception, it never gets thrown here
+                failed = task instanceof Future && failedWithin((Future<?>) task);
+            } finally {
+                finished(start, failed);
+            }
+        }
+    }
+
+    private class TimedFutureTask<T> extends FutureTask<T> {
+        //set by execute() before handing it over, which makes it visible to the running thread
+        private long enqueuedAt;
+
+        TimedFutureTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        TimedFutureTask(Runnable runnable, T value) {
+            super(runnable, value);
+        }
+
+        boolean isOwnedBy(InstrumentedExecutorService executor) {
+            return executor == InstrumentedExecutorService.this;
+        }
+
+        @Override
+        public void run() {
+            var start = started(enqueuedAt);
+            try {
+                //FutureTask keeps the task's exception instead of throwing it
+                super.run();
+            } finally {
+                finished(start, failedWithin(this));
+            }
+        }
+    }
+
+    //done and completed with an exception, get() doesn't block here
+    private static boolean failedWithin(Future<?> future){
+        if (!future.isDone() || future.isCancelled())
+            return false;
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public static class Snapshot {
+        private final long queued;
+        private final long active;
+        private final long completed;
+        private final long failed;
+        private final long rejected;
+        private final double throughput;
+        private final LatencyHistogram.Snapshot queueWait;
+        private final LatencyHistogram.Snapshot runTime;
+
+        Snapshot(long queued, long active, long completed, long failed, long rejected, double throughput,
+                 LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot runTime) {
+            this.queued = queued;
+            this.active = active;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.throughput = throughput;
+            this.queueWait = queueWait;
+            this.runTime = runTime;
+        }
+
+        public long getQueued() {
+            return queued;
+        }
+
+        public long getActive() {
+            return active;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        //completed tasks per second since the previous snapshot
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public LatencyHistogram.Snapshot getQueueWait() {
+            return queueWait;
+        }
+
+        public LatencyHistogram.Snapshot getRunTime() {
+            return runTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("queued=%d active=%d completed=%d failed=%d rejected=%d throughput=%.1f/s%n" +
+                            "  queue wait: %s%n  run time:   %s",
+                    queued, active, completed, failed, rejected, throughput, queueWait, runTime);
+        }
+    }
+}
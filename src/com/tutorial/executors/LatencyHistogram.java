@@ -0,0 +1,127 @@
+package com.tutorial.executors;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Lock-free log-linear histogram of nanosecond values (like a tiny HdrHistogram):
+//every power of two is split into 8 buckets, so percentiles are within 12.5%.
+//record() is a couple of atomic increments and never allocates
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //values below 2 * SUB_BUCKETS get a bucket of their own
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int LINEAR_EXPONENT = Long.numberOfTrailingZeros(LINEAR_LIMIT);
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - LINEAR_EXPONENT) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos){
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        sum.add(nanos);
+        var currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos))
+            currentMax = max.get();
+    }
+
+    //consistent enough for monitoring, recording goes on while we read
+    public Snapshot snapshot(){
+        var copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        var maxValue = max.get();
+        //a bucket's upper bound can be above anything really recorded
+        return new Snapshot(count, count == 0 ? 0 : sum.sum() / count, maxValue,
+                Math.min(maxValue, percentile(copy, count, 0.50)),
+                Math.min(maxValue, percentile(copy, count, 0.99)),
+                Math.min(maxValue, percentile(copy, count, 0.999)));
+    }
+
+    private static int bucketOf(long value){
+        if (value < LINEAR_LIMIT)
+            return (int) value;
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    //largest value that falls into the bucket
+    private static long upperBoundOf(int bucket){
+        if (bucket < LINEAR_LIMIT)
+            return bucket;
+        var exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+        var subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        var width = 1L << (exponent - SUB_BUCKET_BITS);
+        var lower = (1L << exponent) + subBucket * width;
+        return lower + (width - 1);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile){
+        if (total == 0)
+            return 0;
+        var rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return upperBoundOf(i);
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    public static class Snapshot {
+        private final long count;
+        private final long mean;
+        private final long max;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+
+        Snapshot(long count, long mean, long max, long p50, long p99, long p999) {
+            this.count = count;
+            this.mean = mean;
+            this.max = max;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return mean;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public long getP50Nanos() {
+            return p50;
+        }
+
+        public long getP99Nanos() {
+            return p99;
+        }
+
+        public long getP999Nanos() {
+            return p999;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+                    count, mean / 1e6, p50 / 1e6, p99 / 1e6, p999 / 1e6, max / 1e6);
+        }
+    }
+}
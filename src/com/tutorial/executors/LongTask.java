@@ -5,7 +5,8 @@ public class LongTask {
         try {
             Thread.sleep(3000);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            //cancelled: keep the interrupt flag so the caller can see it
+            Thread.currentThread().interrupt();
         }
     }
 }
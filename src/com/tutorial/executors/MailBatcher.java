@@ -0,0 +1,119 @@
+package com.tutorial.executors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+//Collects queued mails and ships them as one batch once maxBatchSize mails are waiting
+//or maxDelayMillis passed since the first one arrived, whichever comes first.
+//Every caller gets its own future, completed when its batch is acknowledged by the transport
+public class MailBatcher {
+    private final MailTransport transport;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+
+    private final Object lock = new Object();
+    private List<Pending> pending = new ArrayList<>();
+    //identifies the open batch so a late timer doesn't flush the next one early
+    private long batchId;
+
+    public MailBatcher(MailTransport transport, Executor executor, int maxBatchSize, long maxDelayMillis) {
+        if (transport == null || executor == null)
+            throw new IllegalArgumentException("transport and executor are required");
+        if (maxBatchSize < 1 || maxDelayMillis < 0)
+            throw new IllegalArgumentException("maxBatchSize must be positive and maxDelayMillis not negative");
+        this.transport = transport;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public CompletableFuture<Void> add(String message){
+        var future = new CompletableFuture<Void>();
+        List<Pending> full = null;
+        synchronized (lock){
+            pending.add(new Pending(message, future));
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                var id = batchId;
+                //the timer only fires the deadline, delivery itself runs on the mail executor
+                AsyncTimer.schedule(() -> flush(id), maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null)
+            dispatch(full);
+        return future;
+    }
+
+    //ships everything that is waiting right now
+    public void flush(){
+        List<Pending> batch;
+        synchronized (lock){
+            batch = takePending();
+        }
+        dispatch(batch);
+    }
+
+    //ships a ready-made batch as is, bypassing the queue
+    public CompletableFuture<Void> sendBatch(List<String> messages){
+        //nothing to deliver, dispatch() would never complete the future
+        if (messages.isEmpty())
+            return CompletableFuture.completedFuture(null);
+        var future = new CompletableFuture<Void>();
+        var batch = new ArrayList<Pending>(messages.size());
+        for (var message : messages)
+            batch.add(new Pending(message, future));
+        dispatch(batch);
+        return future;
+    }
+
+    private void flush(long id){
+        List<Pending> batch = null;
+        synchronized (lock){
+            if (id == batchId)
+                batch = takePending();
+        }
+        if (batch != null)
+            dispatch(batch);
+    }
+
+    //must hold lock
+    private List<Pending> takePending(){
+        var batch = pending;
+        pending = new ArrayList<>();
+        batchId++;
+        return batch;
+    }
+
+    private void dispatch(List<Pending> batch){
+        if (batch.isEmpty())
+            return;
+        var messages = new ArrayList<String>(batch.size());
+        for (var p : batch)
+            messages.add(p.message);
+        try {
+            executor.execute(() -> {
+                try {
+                    transport.deliver(messages);
+                    batch.forEach(p -> p.future.complete(null));
+                } catch (Throwable e) {
+                    batch.forEach(p -> p.future.completeExceptionally(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batch.forEach(p -> p.future.completeExceptionally(e));
+        }
+    }
+
+    private static class Pending {
+        final String message;
+        final CompletableFuture<Void> future;
+
+        Pending(String message, CompletableFuture<Void> future) {
+            this.message = message;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.tutorial.executors;
+
+import java.util.concurrent.*;
+
+//Execution engines for MailService. Sending mail blocks, so it must never run on
+//ForkJoinPool.commonPool() where it would starve parallel streams and async continuations
+public class MailExecutors {
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    //fixed number of platform threads with a bounded queue
+    //when both threads and queue are full the rejection handler decides (abort, caller runs, discard ...)
+    public static ExecutorService bounded(int threads, int queueCapacity, RejectedExecutionHandler rejectionPolicy){
+        if (threads < 1 || queueCapacity < 1)
+            throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        return new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new DaemonThreadFactory("mail-sender-"),
+                rejectionPolicy);
+    }
+
+    public static ExecutorService bounded(int threads, int queueCapacity){
+        return bounded(threads, queueCapacity, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static ExecutorService bounded(){
+        return bounded(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    //one virtual thread per mail, blocking is cheap there so no queue is needed
+    //falls back to the bounded pool on JDKs without virtual threads
+    public static ExecutorService virtualThreadPerTask(){
+        var executor = VirtualThreads.newPerTaskExecutor();
+        return executor != null ? executor : bounded();
+    }
+}
@@ -1,8 +1,44 @@
 package com.tutorial.executors;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+//close() when done: flushes queued mails and shuts down the executor it was given
+public class MailService implements AutoCloseable {
+    private final Executor executor;
+    private final MailBatcher batcher;
+
+    //every MailService() shares this one bounded pool instead of starting its own,
+    //its threads are daemons so it never has to be shut down
+    private static class SharedPool {
+        static final ExecutorService EXECUTOR = MailExecutors.bounded();
+    }
+
+    //shared bounded platform pool by default (see MailExecutors)
+    public MailService() {
+        this(SharedPool.EXECUTOR);
+    }
+
+    //caller supplied executor: bounded pool, virtual threads or anything else
+    public MailService(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor");
+        this.executor = executor;
+        this.batcher = null;
+    }
+
+    //queued mode: sendQueued() collects up to maxBatchSize mails or waits at most maxDelayMillis,
+    //then the whole batch goes to the transport in one call
+    public MailService(Executor executor, MailTransport transport, int maxBatchSize, long maxDelayMillis) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor");
+        this.executor = executor;
+        this.batcher = new MailBatcher(transport, executor, maxBatchSize, maxDelayMillis);
+    }
 
-public class MailService {
     public void send(){
         //Adds three seconds delay
         LongTask.simulate();
@@ -11,6 +47,46 @@ public class MailService {
 
     // if it was returning int it would be CompletableFuture<int>
     public CompletableFuture<Void> sendAsync(){
-        return CompletableFuture.runAsync(()-> send());
+        //never use the common pool here, send() blocks
+        try {
+            return CompletableFuture.runAsync(()-> send(), executor);
+        } catch (RejectedExecutionException e) {
+            //queue is full: report it through the future instead of throwing at the caller
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    //completes when the batch holding this mail is acknowledged
+    public CompletableFuture<Void> sendQueued(String message){
+        return requireBatcher().add(message);
+    }
+
+    //one transport call for all messages
+    public CompletableFuture<Void> sendBatch(List<String> messages){
+        return requireBatcher().sendBatch(messages);
+    }
+
+    //ships queued mails without waiting for the batch to fill up
+    public void flush(){
+        requireBatcher().flush();
+    }
+
+    private MailBatcher requireBatcher(){
+        if (batcher == null)
+            throw new IllegalStateException("MailService was created without a MailTransport");
+        return batcher;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    //mails already handed to the executor still go out
+    @Override
+    public void close(){
+        if (batcher != null)
+            batcher.flush();
+        if (executor != SharedPool.EXECUTOR && executor instanceof ExecutorService)
+            ((ExecutorService) executor).shutdown();
     }
 }
@@ -0,0 +1,9 @@
+package com.tutorial.executors;
+
+import java.util.List;
+
+//Ships a whole batch of mails in one call (SMTP pipelining, a bulk HTTP API ...)
+public interface MailTransport {
+    //returning normally acknowledges every mail in the batch, throwing fails all of them
+    void deliver(List<String> messages) throws Exception;
+}
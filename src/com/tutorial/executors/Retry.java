@@ -0,0 +1,106 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+//Retries an async operation with exponential backoff and full jitter.
+//Each exception type gets its own policy, anything without a policy fails right away.
+//Waiting between attempts is a timer entry on AsyncTimer, no thread sleeps
+//  new Retry().on(IOException.class, new Retry.Policy(5, Duration.ofMillis(100), Duration.ofSeconds(5)))
+public class Retry {
+    //first matching type wins, so register specific types before general ones
+    private final Map<Class<? extends Throwable>, Policy> policies = new LinkedHashMap<>();
+
+    public Retry on(Class<? extends Throwable> type, Policy policy){
+        policies.put(type, policy);
+        return this;
+    }
+
+    //attempt is called again for every retry and must start a new operation each time
+    public <T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> attempt){
+        var result = new CompletableFuture<T>();
+        run(attempt, 1, result);
+        return result;
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Executor executor){
+        return run(() -> CompletableFuture.supplyAsync(task, executor));
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> attempt, int attemptNumber, CompletableFuture<T> result){
+        if (result.isDone())
+            return;
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (Throwable e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+                return;
+            }
+            var cause = unwrap(e);
+            var policy = policyFor(cause);
+            if (policy == null || attemptNumber >= policy.maxAttempts) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            AsyncTimer.schedule(() -> run(attempt, attemptNumber + 1, result), policy.delayBefore(attemptNumber + 1));
+        });
+    }
+
+    private Policy policyFor(Throwable error){
+        for (var entry : policies.entrySet()) {
+            if (entry.getKey().isInstance(error))
+                return entry.getValue();
+        }
+        return null;
+    }
+
+    private static Throwable unwrap(Throwable e){
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null)
+            e = e.getCause();
+        return e;
+    }
+
+    public static class Policy {
+        private final int maxAttempts;
+        private final long initialDelayNanos;
+        private final long maxDelayNanos;
+        private final double multiplier;
+
+        public Policy(int maxAttempts, Duration initialDelay, Duration maxDelay, double multiplier) {
+            if (maxAttempts < 1 || multiplier < 1)
+                throw new IllegalArgumentException("maxAttempts and multiplier must be at least 1");
+            this.maxAttempts = maxAttempts;
+            this.initialDelayNanos = initialDelay.toNanos();
+            this.maxDelayNanos = maxDelay.toNanos();
+            this.multiplier = multiplier;
+        }
+
+        //doubles the delay on every retry
+        public Policy(int maxAttempts, Duration initialDelay, Duration maxDelay) {
+            this(maxAttempts, initialDelay, maxDelay, 2);
+        }
+
+        //full jitter: anywhere between 0 and the exponential delay, so failing clients don't retry in lockstep
+        Duration delayBefore(int attemptNumber){
+            var exponential = initialDelayNanos * Math.pow(multiplier, attemptNumber - 2);
+            var cap = (long) Math.min(maxDelayNanos, exponential);
+            return Duration.ofNanos(cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1));
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.tutorial.executors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//In-process transport for tests and demos: pays a fixed latency per batch (not per mail)
+//and remembers every batch it delivered
+public class StubMailTransport implements MailTransport {
+    private final long latencyMillis;
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    public StubMailTransport(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public StubMailTransport() {
+        this(0);
+    }
+
+    @Override
+    public void deliver(List<String> messages) throws Exception {
+        if (latencyMillis > 0)
+            Thread.sleep(latencyMillis);
+        batches.add(List.copyOf(messages));
+        System.out.println("A batch of " + messages.size() + " mails was sent");
+    }
+
+    public List<List<String>> getBatches() {
+        synchronized (batches){
+            return new ArrayList<>(batches);
+        }
+    }
+
+    public int getDeliveredCount() {
+        synchronized (batches){
+            return batches.stream().mapToInt(List::size).sum();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Structured concurrency in the spirit of JDK's StructuredTaskScope (not available at our language level):
+//subtasks forked inside a scope are joined together, and shutdown() interrupts every one still running.
+//close() never returns while a subtask thread is alive, so nothing outlives its scope
+//  try (var scope = new TaskScope.ShutdownOnFailure()) {
+//      var price = scope.fork(() -> ...);
+//      var rate = scope.fork(() -> ...);
+//      scope.join();
+//      scope.throwIfFailed();
+//      ... price.get() * rate.get()
+//  }
+public class TaskScope implements AutoCloseable {
+    private final ThreadFactory threadFactory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    //guarded by lock
+    private final Set<Thread> running = new HashSet<>();
+    private boolean shutdown;
+    private boolean closed;
+
+    public TaskScope(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    //virtual threads when the JDK has them, daemon platform threads otherwise
+    public TaskScope() {
+        this(defaultThreadFactory());
+    }
+
+    private static ThreadFactory defaultThreadFactory(){
+        var virtualThreads = VirtualThreads.factory("scope-");
+        return virtualThreads != null ? virtualThreads : new DaemonThreadFactory("scope-");
+    }
+
+    public <T> Subtask<T> fork(Callable<? extends T> task){
+        var subtask = new Subtask<T>();
+        lock.lock();
+        try {
+            if (closed)
+                throw new IllegalStateException("scope is closed");
+            //forking after shutdown is allowed, the subtask just never runs
+            if (shutdown)
+                return subtask;
+            var thread = threadFactory.newThread(() -> run(subtask, task));
+            running.add(thread);
+            thread.start();
+        } finally {
+            lock.unlock();
+        }
+        return subtask;
+    }
+
+    private <T> void run(Subtask<T> subtask, Callable<? extends T> task){
+        try {
+            subtask.succeed(task.call());
+        } catch (Throwable e) {
+            subtask.fail(e);
+        }
+        try {
+            //results after shutdown are ignored, the policy already decided
+            if (!isShutdown())
+                handleComplete(subtask);
+        } finally {
+            lock.lock();
+            try {
+                running.remove(Thread.currentThread());
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //policy hook, called once for every subtask that finishes before shutdown
+    protected void handleComplete(Subtask<?> subtask){
+    }
+
+    //waits until every subtask finished or the scope was shut down
+    public TaskScope join() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!running.isEmpty() && !shutdown)
+                changed.await();
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    //like join() but shuts the scope down when the deadline passes
+    public TaskScope joinUntil(Instant deadline) throws InterruptedException, TimeoutException {
+        lock.lock();
+        try {
+            while (!running.isEmpty() && !shutdown) {
+                var nanos = Duration.between(Instant.now(), deadline).toNanos();
+                if (nanos <= 0) {
+                    shutdownLocked();
+                    throw new TimeoutException("scope didn't finish before " + deadline);
+                }
+                changed.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    //interrupts every running subtask, later forks don't start
+    public void shutdown(){
+        lock.lock();
+        try {
+            shutdownLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void shutdownLocked(){
+        if (shutdown)
+            return;
+        shutdown = true;
+        for (var thread : running)
+            thread.interrupt();
+        changed.signalAll();
+    }
+
+    public boolean isShutdown(){
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //shuts down and waits for every subtask thread to end
+    @Override
+    public void close(){
+        var interrupted = false;
+        lock.lock();
+        try {
+            closed = true;
+            shutdownLocked();
+            while (!running.isEmpty()) {
+                try {
+                    changed.await();
+                } catch (InterruptedException e) {
+                    //keep waiting, leaving threads behind is what this class prevents
+                    interrupted = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public static class Subtask<T> {
+        public enum State {
+            UNAVAILABLE,
+            SUCCESS,
+            FAILED
+        }
+
+        private volatile State state = State.UNAVAILABLE;
+        private T result;
+        private Throwable exception;
+
+        void succeed(T value){
+            result = value;
+            state = State.SUCCESS;
+        }
+
+        void fail(Throwable e){
+            exception = e;
+            state = State.FAILED;
+        }
+
+        public State state() {
+            return state;
+        }
+
+        public T get(){
+            if (state != State.SUCCESS)
+                throw new IllegalStateException("subtask did not succeed: " + state);
+            return result;
+        }
+
+        public Throwable exception(){
+            if (state != State.FAILED)
+                throw new IllegalStateException("subtask did not fail: " + state);
+            return exception;
+        }
+    }
+
+    //first failure cancels the siblings
+    public static class ShutdownOnFailure extends TaskScope {
+        private volatile Throwable firstException;
+
+        public ShutdownOnFailure(ThreadFactory threadFactory) {
+            super(threadFactory);
+        }
+
+        public ShutdownOnFailure() {
+        }
+
+        @Override
+        protected void handleComplete(Subtask<?> subtask) {
+            if (subtask.state() == Subtask.State.FAILED) {
+                synchronized (this) {
+                    if (firstException == null)
+                        firstException = subtask.exception();
+                }
+                shutdown();
+            }
+        }
+
+        @Override
+        public ShutdownOnFailure join() throws InterruptedException {
+            super.join();
+            return this;
+        }
+
+        public void throwIfFailed() throws ExecutionException {
+            if (firstException != null)
+                throw new ExecutionException(firstException);
+        }
+    }
+
+    //first success wins and cancels the others
+    public static class ShutdownOnSuccess<T> extends TaskScope {
+        private volatile Subtask<? extends T> winner;
+        private volatile Throwable firstException;
+
+        public ShutdownOnSuccess(ThreadFactory threadFactory) {
+            super(threadFactory);
+        }
+
+        public ShutdownOnSuccess() {
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void handleComplete(Subtask<?> subtask) {
+            synchronized (this) {
+                if (winner != null)
+                    return;
+                if (subtask.state() == Subtask.State.SUCCESS) {
+                    winner = (Subtask<? extends T>) subtask;
+                } else {
+                    if (firstException == null)
+                        firstException = subtask.exception();
+                    return;
+                }
+            }
+            shutdown();
+        }
+
+        @Override
+        public ShutdownOnSuccess<T> join() throws InterruptedException {
+            super.join();
+            return this;
+        }
+
+        public T result() throws ExecutionException {
+            var subtask = winner;
+            if (subtask != null)
+                return subtask.get();
+            if (firstException != null)
+                throw new ExecutionException(firstException);
+            throw new IllegalStateException("no subtask completed");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.tutorial.executors;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Unlike completeOnTimeout/orTimeout, a timeout here interrupts the task so the worker thread is freed.
+//Tasks that still run stopGrace after the interrupt (they ignore it) are counted as abandoned
+public class Timeouts {
+    public static final Duration DEFAULT_STOP_GRACE = Duration.ofMillis(50);
+
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    //cancelled while running, waiting to see whether it stops within stopGrace
+    private static final int CANCELLED = 3;
+    private static final int STOPPED = 4;
+    private static final int ABANDONED = 5;
+
+    private final ExecutorService executor;
+    private final long stopGraceNanos;
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder stopped = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    //executor must run tasks on their own threads so that cancel(true) can interrupt them
+    public Timeouts(ExecutorService executor, Duration stopGrace) {
+        this.executor = executor;
+        this.stopGraceNanos = stopGrace.toNanos();
+    }
+
+    public Timeouts(ExecutorService executor) {
+        this(executor, DEFAULT_STOP_GRACE);
+    }
+
+    public Timeouts() {
+        this(Executors.newCachedThreadPool(new DaemonThreadFactory("timeout-worker-")));
+    }
+
+    //fails with a TimeoutException after timeout and interrupts the task
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Duration timeout){
+        var result = new CompletableFuture<T>();
+        var state = new AtomicInteger(NEW);
+        Future<?> running;
+        try {
+            running = executor.submit(() -> run(task, state, result));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        var timer = AsyncTimer.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("task didn't finish within " + timeout))) {
+                timedOut.increment();
+                cancel(state, running);
+            }
+        }, timeout);
+        result.whenComplete((value, e) -> {
+            timer.cancel(false);
+            //the caller cancelled the result (or a Deadline did): stop the task too
+            if (e instanceof CancellationException)
+                cancel(state, running);
+        });
+        return result;
+    }
+
+    //same as completeOnTimeout(defaultValue ...) but the task is actually stopped
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Duration timeout, T defaultValue){
+        return supplyAsync(task, timeout).exceptionally(ex -> {
+            if (ex instanceof TimeoutException || ex.getCause() instanceof TimeoutException)
+                return defaultValue;
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        });
+    }
+
+    private <T> void run(Supplier<T> task, AtomicInteger state, CompletableFuture<T> result){
+        if (!state.compareAndSet(NEW, RUNNING))
+            return;
+        try {
+            T value = task.get();
+            if (state.compareAndSet(RUNNING, DONE))
+                result.complete(value);
+            else
+                countLateFinish(state);
+        } catch (Throwable e) {
+            if (state.compareAndSet(RUNNING, DONE))
+                result.completeExceptionally(e);
+            else
+                countLateFinish(state);
+        }
+    }
+
+    //a cancelled task returned before the grace period ran out: it stopped on the interrupt
+    private void countLateFinish(AtomicInteger state){
+        if (state.compareAndSet(CANCELLED, STOPPED))
+            stopped.increment();
+    }
+
+    private void cancel(AtomicInteger state, Future<?> running){
+        //never started: dropping it from the queue is enough
+        if (state.compareAndSet(NEW, STOPPED)) {
+            running.cancel(false);
+            stopped.increment();
+        } else if (state.compareAndSet(RUNNING, CANCELLED)) {
+            running.cancel(true);
+            //still running once the grace period is over: it ignores the interrupt, and may never return
+            AsyncTimer.schedule(() -> {
+                if (state.compareAndSet(CANCELLED, ABANDONED))
+                    abandoned.increment();
+            }, stopGraceNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    //timed out or cancelled tasks that stopped within the grace period
+    public long getStoppedCount() {
+        return stopped.sum();
+    }
+
+    //timed out or cancelled tasks that kept running past the grace period
+    public long getAbandonedCount() {
+        return abandoned.sum();
+    }
+}
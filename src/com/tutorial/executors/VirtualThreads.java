@@ -0,0 +1,54 @@
+package com.tutorial.executors;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+//Virtual threads only exist on newer JDKs (21+), the project still targets an older language level
+//so we look them up by reflection and let callers fall back to platform threads
+public class VirtualThreads {
+    private static final Method newPerTaskExecutor = lookup(
+            "java.util.concurrent.Executors", "newVirtualThreadPerTaskExecutor");
+    private static final Method ofVirtual = lookup("java.lang.Thread", "ofVirtual");
+    //the methods exist but calling them failed: treated as not available from then on
+    private static volatile boolean broken;
+
+    public static boolean isAvailable(){
+        return newPerTaskExecutor != null && ofVirtual != null && !broken;
+    }
+
+    //one new virtual thread per submitted task, or null when not supported
+    public static ExecutorService newPerTaskExecutor(){
+        if (newPerTaskExecutor == null)
+            return null;
+        try {
+            return (ExecutorService) newPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            broken = true;
+            return null;
+        }
+    }
+
+    //Thread.ofVirtual().name(prefix, 0).factory(), or null when not supported
+    public static ThreadFactory factory(String namePrefix){
+        if (ofVirtual == null)
+            return null;
+        try {
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            broken = true;
+            return null;
+        }
+    }
+
+    private static Method lookup(String className, String methodName){
+        try {
+            return Class.forName(className).getMethod(methodName);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
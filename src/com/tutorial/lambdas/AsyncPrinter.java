@@ -0,0 +1,288 @@
+package com.tutorial.lambdas;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Printer that never writes on the caller's thread: print() puts the message into a lock-free ring buffer
+//and one background thread drains it in batches into a channel with buffered writes.
+//System.out.println takes a lock and flushes on every call, this doesn't.
+//What happens when the ring is full is up to the Overflow policy
+public class AsyncPrinter implements Printer, AutoCloseable {
+    public enum Overflow {
+        //wait for space, nothing is lost
+        BLOCK,
+        //drop the new message
+        DROP,
+        //above 3/4 full keep only every sampleRate-th message, drop when full
+        SAMPLE
+    }
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final int BATCH_SIZE = 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    //set in tail by close(): the reserving CAS of any print() after that fails,
+    //so once it's set no message can still be on its way into the ring
+    private static final long CLOSED = 1L << 62;
+
+    //bounded multi-producer ring, every slot carries a sequence number telling who may use it next
+    private final AtomicReferenceArray<String> messages;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    //next position to reserve, plus the CLOSED bit
+    private final AtomicLong tail = new AtomicLong();
+    //only the consumer thread moves head and flushed
+    private volatile long head;
+    //everything before this position was written to the channel
+    private volatile long flushed;
+
+    private final WritableByteChannel out;
+    private final boolean closeOut;
+    private final Overflow overflow;
+    private final int sampleRate;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final Thread consumer;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final AtomicLong offered = new AtomicLong();
+    private final LongAdder written = new LongAdder();
+    private volatile boolean consumerParked;
+    //flush() waits here, the consumer signals after every flush while somebody waits
+    private final Lock flushLock = new ReentrantLock();
+    private final Condition flushedMoved = flushLock.newCondition();
+    private final AtomicInteger flushWaiters = new AtomicInteger();
+
+    //closeOut: close the channel together with the printer (false for stdout)
+    public AsyncPrinter(WritableByteChannel out, boolean closeOut, int capacity, Overflow overflow, int sampleRate) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        if (sampleRate < 1)
+            throw new IllegalArgumentException("sampleRate must be positive");
+        this.messages = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+        this.mask = capacity - 1;
+        this.out = out;
+        this.closeOut = closeOut;
+        this.overflow = overflow;
+        this.sampleRate = sampleRate;
+        this.consumer = new Thread(this::drain, "async-printer");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    //stdout without going through System.out (and its lock)
+    public static AsyncPrinter stdout(Overflow overflow){
+        return new AsyncPrinter(new FileOutputStream(FileDescriptor.out).getChannel(), false, DEFAULT_CAPACITY, overflow, 10);
+    }
+
+    @Override
+    public void print(String message) {
+        if (isClosed())
+            throw new IllegalStateException("printer is closed");
+        if (overflow == Overflow.SAMPLE && size() > (mask + 1) * 3L / 4
+                && offered.getAndIncrement() % sampleRate != 0) {
+            sampledOut.increment();
+            return;
+        }
+        while (!offer(message)) {
+            if (overflow != Overflow.BLOCK) {
+                dropped.increment();
+                return;
+            }
+            wakeConsumer();
+            LockSupport.parkNanos(10_000);
+        }
+        if (consumerParked)
+            wakeConsumer();
+    }
+
+    private boolean offer(String message){
+        while (true) {
+            var position = tail.get();
+            if ((position & CLOSED) != 0)
+                throw new IllegalStateException("printer is closed");
+            var slot = (int) position & mask;
+            var sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    messages.set(slot, message);
+                    //publish: the consumer reads the slot once it sees this sequence
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                //slot still holds a message from one lap ago: full
+                return false;
+            }
+            //another producer took this position, try the next one
+        }
+    }
+
+    private void wakeConsumer(){
+        LockSupport.unpark(consumer);
+    }
+
+    private void drain(){
+        var idleNanos = 1_000L;
+        while (true) {
+            var batch = drainBatch();
+            if (batch > 0) {
+                idleNanos = 1_000L;
+                continue;
+            }
+            flushWriteBuffer();
+            flushed = head;
+            if (flushWaiters.get() > 0)
+                signalFlushed();
+            if (isClosed() && head == end()) {
+                //nothing left, and nothing can arrive anymore
+                signalFlushed();
+                return;
+            }
+            //nothing to do: back off, producers unpark us when they see the flag
+            consumerParked = true;
+            if (head == end())
+                LockSupport.parkNanos(idleNanos);
+            consumerParked = false;
+            idleNanos = Math.min(idleNanos * 2, 1_000_000L);
+        }
+    }
+
+    private int drainBatch(){
+        var count = 0;
+        var position = head;
+        while (count < BATCH_SIZE) {
+            var slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1)
+                break;
+            var message = messages.get(slot);
+            messages.set(slot, null);
+            //hand the slot back to producers for the next lap
+            sequences.set(slot, position + mask + 1);
+            position++;
+            count++;
+            write(message);
+        }
+        head = position;
+        return count;
+    }
+
+    private void write(String message){
+        var bytes = (message == null ? "null" : message).getBytes(StandardCharsets.UTF_8);
+        if (writeBuffer.remaining() < bytes.length + NEW_LINE.length)
+            flushWriteBuffer();
+        if (bytes.length + NEW_LINE.length > writeBuffer.capacity()) {
+            //too big for the buffer, write it as is
+            writeFully(ByteBuffer.wrap(bytes));
+            writeFully(ByteBuffer.wrap(NEW_LINE));
+        } else {
+            writeBuffer.put(bytes).put(NEW_LINE);
+        }
+        written.increment();
+    }
+
+    private void flushWriteBuffer(){
+        if (writeBuffer.position() == 0)
+            return;
+        writeBuffer.flip();
+        writeFully(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer){
+        try {
+            while (buffer.hasRemaining())
+                out.write(buffer);
+        } catch (IOException e) {
+            //nowhere to report it but stderr, the messages are lost
+            e.printStackTrace();
+            buffer.position(buffer.limit());
+        }
+    }
+
+    //messages waiting in the ring
+    public int size(){
+        return (int) Math.max(0, end() - head);
+    }
+
+    //position after the last reserved message
+    private long end(){
+        return tail.get() & ~CLOSED;
+    }
+
+    private boolean isClosed(){
+        return (tail.get() & CLOSED) != 0;
+    }
+
+    private void signalFlushed(){
+        flushLock.lock();
+        try {
+            flushedMoved.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //waits until everything printed so far has been handed to the channel
+    public void flush() throws InterruptedException {
+        var target = end();
+        //registered before checking, so the consumer either sees us waiting or we see its progress
+        flushWaiters.incrementAndGet();
+        flushLock.lock();
+        try {
+            while (flushed < target && consumer.isAlive()) {
+                wakeConsumer();
+                flushedMoved.await();
+            }
+        } finally {
+            flushLock.unlock();
+            flushWaiters.decrementAndGet();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    //prints whatever is still queued, then stops
+    //interrupted while waiting: returns early with the interrupt flag set, the consumer still finishes on its own
+    @Override
+    public void close() throws IOException {
+        long current;
+        do {
+            current = tail.get();
+        } while ((current & CLOSED) == 0 && !tail.compareAndSet(current, current | CLOSED));
+        wakeConsumer();
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (closeOut)
+            out.close();
+    }
+}
@@ -94,6 +94,19 @@ public class LambdasDemo {
         greet(LambdasDemo::new);
 
     }
+    public static void asyncPrinter(){
+        //print() only drops the message into a ring buffer, one background thread writes them in batches
+        try (var printer = AsyncPrinter.stdout(AsyncPrinter.Overflow.DROP)) {
+            greet(printer);
+            for (int i = 0; i < 10; i++)
+                printer.print("message " + i);
+            printer.flush();
+            System.out.println("Dropped : " + printer.getDroppedCount());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     public static void greet(Printer printer){
         printer.print("Hello world");
     }
@@ -0,0 +1,186 @@
+package com.tutorial.models;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+//Same data as a List<Movie>, stored by column: one int[] for the likes, one byte per row for the genre
+//and names dictionary-encoded (each distinct name stored once, rows keep its int id).
+//No object per row and no boxing, scans run over plain arrays. Rows are addressed by index.
+//Not thread safe while rows are being added, fine to query from many threads afterwards
+public class MovieTable {
+    private static final Genre[] GENRES = Genre.values();
+
+    private int[] likes;
+    private byte[] genres;
+    private int[] nameIds;
+    private int size;
+
+    //dictionary: id -> name and name -> id
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+
+    public MovieTable(int initialCapacity) {
+        likes = new int[Math.max(initialCapacity, 16)];
+        genres = new byte[likes.length];
+        nameIds = new int[likes.length];
+    }
+
+    public MovieTable() {
+        this(16);
+    }
+
+    public static MovieTable of(Collection<Movie> movies){
+        var table = new MovieTable(movies.size());
+        for (var movie : movies)
+            table.add(movie.getName(), movie.getLikes(), movie.getGenre());
+        return table;
+    }
+
+    public MovieTable add(String name, int likes, Genre genre) {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(genre, "genre");
+        if (size == this.likes.length)
+            grow();
+        this.likes[size] = likes;
+        genres[size] = (byte) genre.ordinal();
+        nameIds[size] = idOf(name);
+        size++;
+        return this;
+    }
+
+    public MovieTable add(String name, int likes) {
+        //same default as Movie
+        return add(name, likes, Genre.ACTION);
+    }
+
+    private int idOf(String name){
+        var id = dictionaryIds.get(name);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.add(name);
+            dictionaryIds.put(name, id);
+        }
+        return id;
+    }
+
+    private void grow(){
+        var capacity = likes.length * 2;
+        likes = Arrays.copyOf(likes, capacity);
+        genres = Arrays.copyOf(genres, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int distinctNames() {
+        return dictionary.size();
+    }
+
+    public int getLikes(int row) {
+        return likes[checkRow(row)];
+    }
+
+    public Genre getGenre(int row) {
+        return GENRES[genres[checkRow(row)]];
+    }
+
+    public String getName(int row) {
+        return dictionary.get(nameIds[checkRow(row)]);
+    }
+
+    //builds a Movie for one row, for the few results a query returns
+    public Movie getMovie(int row) {
+        return new Movie(getName(row), getLikes(row), getGenre(row));
+    }
+
+    private int checkRow(int row){
+        return Objects.checkIndex(row, size);
+    }
+
+    //scans: every row index, and the likes column as is
+    public IntStream rows() {
+        return IntStream.range(0, size);
+    }
+
+    public IntStream likes() {
+        return Arrays.stream(likes, 0, size);
+    }
+
+    //filters: row indexes, so other columns can be looked up for the matches only
+    public IntStream rowsWhereLikes(IntPredicate predicate) {
+        var likes = this.likes;
+        return rows().filter(row -> predicate.test(likes[row]));
+    }
+
+    public IntStream rowsIn(Genre genre) {
+        var genres = this.genres;
+        var ordinal = (byte) genre.ordinal();
+        return rows().filter(row -> genres[row] == ordinal);
+    }
+
+    //compares int ids, not strings; no rows at all when the name isn't in the dictionary
+    public IntStream rowsNamed(String name) {
+        var id = dictionaryIds.get(name);
+        if (id == null)
+            return IntStream.empty();
+        var nameIds = this.nameIds;
+        int target = id;
+        return rows().filter(row -> nameIds[row] == target);
+    }
+
+    public IntStream likes(Genre genre) {
+        var likes = this.likes;
+        return rowsIn(genre).map(row -> likes[row]);
+    }
+
+    //sums and summaries are plain loops over the arrays; long so tens of millions of rows can't overflow
+    public long sumLikes() {
+        long sum = 0;
+        for (int row = 0; row < size; row++)
+            sum += likes[row];
+        return sum;
+    }
+
+    public long sumLikes(Genre genre) {
+        var ordinal = (byte) genre.ordinal();
+        long sum = 0;
+        for (int row = 0; row < size; row++)
+            if (genres[row] == ordinal)
+                sum += likes[row];
+        return sum;
+    }
+
+    public IntSummaryStatistics summarizeLikes() {
+        var statistics = new IntSummaryStatistics();
+        for (int row = 0; row < size; row++)
+            statistics.accept(likes[row]);
+        return statistics;
+    }
+
+    public IntSummaryStatistics summarizeLikes(Genre genre) {
+        var ordinal = (byte) genre.ordinal();
+        var statistics = new IntSummaryStatistics();
+        for (int row = 0; row < size; row++)
+            if (genres[row] == ordinal)
+                statistics.accept(likes[row]);
+        return statistics;
+    }
+
+    //groupingBy(Movie::getGenre, summarizingInt(Movie::getLikes)) in a single pass
+    public Map<Genre, IntSummaryStatistics> summarizeLikesByGenre() {
+        var byOrdinal = new IntSummaryStatistics[GENRES.length];
+        for (int i = 0; i < byOrdinal.length; i++)
+            byOrdinal[i] = new IntSummaryStatistics();
+        for (int row = 0; row < size; row++)
+            byOrdinal[genres[row]].accept(likes[row]);
+
+        Map<Genre, IntSummaryStatistics> result = new EnumMap<>(Genre.class);
+        for (var genre : GENRES)
+            if (byOrdinal[genre.ordinal()].getCount() > 0)
+                result.put(genre, byOrdinal[genre.ordinal()]);
+        return result;
+    }
+}
@@ -2,6 +2,7 @@ package com.tutorial.streams;
 
 import com.tutorial.models.Genre;
 import com.tutorial.models.Movie;
+import com.tutorial.models.MovieTable;
 
 import java.util.*;
 import java.util.function.Function;
@@ -336,4 +337,29 @@ public class StreamsDemo {
         //inclusive (1,2,3,4,5)
         IntStream.rangeClosed(1,5).forEach(System.out::print);
     }
+
+    public static void ColumnarMovies() {
+        //same queries as above, but over columns of primitives instead of a list of Movie objects
+        var table = MovieTable.of(List.of(
+                new Movie("b", 10, Genre.COMEDY),
+                new Movie("a", 30, Genre.COMEDY),
+                new Movie("a", 70, Genre.ACTION),
+                new Movie("c", 60, Genre.ROMANCE)
+        ));
+        //rows can also be added directly, repeated names are stored once
+        table.add("c", 20, Genre.THRILLER);
+
+        //likes sum without boxing a single Integer
+        System.out.println(table.sumLikes());
+        System.out.println(table.likes().filter(likes -> likes > 20).count());
+
+        //filters return row indexes, other columns are read for the matches only
+        table.rowsWhereLikes(likes -> likes > 20)
+                .mapToObj(table::getName)
+                .forEach(name -> System.out.println(name));
+
+        System.out.println(table.summarizeLikes(Genre.COMEDY));
+        System.out.println(table.summarizeLikesByGenre());
+        System.out.println(table.rowsNamed("c").count() + " rows named c, " + table.distinctNames() + " distinct names");
+    }
 }
@@ -0,0 +1,11 @@
+package com.tutorial.threads;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+//Source that can hand bytes to a channel directly (FileChannel.transferTo: sendfile/splice on Linux),
+//so the payload never passes through a Java buffer at all
+public interface ChannelDownloadSource extends DownloadSource {
+    //like read(), safe to call concurrently with different positions
+    long transferTo(long position, long count, WritableByteChannel target) throws IOException;
+}
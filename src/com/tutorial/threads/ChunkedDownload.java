@@ -0,0 +1,336 @@
+package com.tutorial.threads;
+
+import com.tutorial.executors.DaemonThreadFactory;
+import com.tutorial.executors.FanOut;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+//Splits the source into byte ranges and fetches up to `parallelism` of them at once.
+//Every chunk is written straight to its final place in the target, so there is nothing to reassemble
+//at the end. How the bytes get there depends on the SinkMode. Progress goes to the DownloadStatus.
+//A resumable download keeps a ProgressJournal, so after a crash or cancel only missing chunks are fetched
+public class ChunkedDownload {
+    public enum SinkMode {
+        //positional FileChannel writes, or transferTo when the source is a ChannelDownloadSource
+        CHANNEL,
+        //target is preallocated and every chunk is read straight into its own mapped window
+        MEMORY_MAPPED
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    public static final int IO_BUFFER_SIZE = 64 * 1024;
+    //transferTo steps, between steps we report progress and check for cancellation
+    private static final long TRANSFER_STEP = 1024 * 1024;
+
+    //shared by all downloads, each download bounds itself to `parallelism` chunks in flight
+    private static final ExecutorService workers =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("download-worker-"));
+    //one direct buffer per worker thread, reused for every chunk it fetches
+    private static final ThreadLocal<ByteBuffer> buffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(IO_BUFFER_SIZE));
+
+    private final DownloadSource source;
+    private final Path target;
+    private final DownloadStatus status;
+    private final int chunkSize;
+    private final int parallelism;
+    private final SinkMode sinkMode;
+    private boolean resumable;
+    //chunks found complete in the journal are added to the status, unless it counted them in an earlier run
+    private boolean countJournaledBytes = true;
+    //set by start() for resumable downloads
+    private ProgressJournal journal;
+    private volatile boolean cancelled;
+    //stopped to be resumed later: the status stays open
+    private volatile boolean paused;
+    //the outcome is decided (FAIL_FAST doesn't wait for the other chunks): chunks still running stop,
+    //the journal and target are closed once the last one has left fetch() (guarded by this)
+    private volatile boolean settling;
+    private int fetching;
+    private Runnable cleanup;
+
+    public ChunkedDownload(DownloadSource source, Path target, DownloadStatus status, int chunkSize, int parallelism, SinkMode sinkMode) {
+        if (chunkSize < 1 || parallelism < 1)
+            throw new IllegalArgumentException("chunkSize and parallelism must be positive");
+        this.source = source;
+        this.target = target;
+        this.status = status;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.sinkMode = sinkMode;
+    }
+
+    public ChunkedDownload(DownloadSource source, Path target, DownloadStatus status, int chunkSize, int parallelism) {
+        this(source, target, status, chunkSize, parallelism, SinkMode.CHANNEL);
+    }
+
+    //one chunk in flight per core
+    public ChunkedDownload(DownloadSource source, Path target, DownloadStatus status, SinkMode sinkMode) {
+        this(source, target, status, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors(), sinkMode);
+    }
+
+    public ChunkedDownload(DownloadSource source, Path target, DownloadStatus status) {
+        this(source, target, status, SinkMode.CHANNEL);
+    }
+
+    //keep a progress journal next to the target and continue from it if there is one
+    public ChunkedDownload resumable(boolean resumable){
+        this.resumable = resumable;
+        return this;
+    }
+
+    //false when resuming with the same status that already counted the journaled chunks
+    public ChunkedDownload countJournaledBytes(boolean countJournaledBytes){
+        this.countJournaledBytes = countJournaledBytes;
+        return this;
+    }
+
+    //completes once every chunk is on disk (the status is marked done as well);
+    //a failed or cancelled download marks the status failed / cancelled, a paused one leaves it open
+    public CompletableFuture<Void> start(){
+        FileChannel channel;
+        List<Supplier<Long>> chunks;
+        try {
+            var size = source.size();
+            //a resumable download never truncates: whatever the journal vouches for is kept,
+            //everything else gets overwritten chunk by chunk anyway (mapping needs a read-write channel)
+            channel = resumable
+                    ? FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (channel.size() > size)
+                channel.truncate(size);
+            if (sinkMode == SinkMode.MEMORY_MAPPED && channel.size() < size)
+                //one byte at the end sets the length, windows can't be mapped past the end of the file
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            if (resumable)
+                journal = ProgressJournal.open(target, channel, size, chunkSize, ProgressJournal.DEFAULT_SYNC_EVERY);
+            chunks = new ArrayList<>();
+            for (long position = 0; position < size; position += chunkSize) {
+                var start = position;
+                var end = Math.min(size, position + chunkSize);
+                chunks.add(() -> fetch(channel, start, end));
+            }
+        } catch (IOException e) {
+            status.failed(e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        var finished = new CompletableFuture<Void>();
+        FanOut.stream(chunks, parallelism, workers, FanOut.ErrorMode.FAIL_FAST, (index, bytes) -> {})
+                .whenComplete((done, e) -> whenSettled(() -> finish(channel, e, finished)));
+        return finished;
+    }
+
+    //runs after every chunk is done with the channel and the journal
+    private void finish(FileChannel channel, Throwable e, CompletableFuture<Void> finished){
+        try {
+            close(channel, e == null);
+        } catch (IOException closeError) {
+            if (e == null) {
+                status.failed(closeError);
+                finished.completeExceptionally(new UncheckedIOException(closeError));
+                return;
+            }
+        }
+        if (e == null) {
+            status.incrementTotalFiles();
+            status.done();
+            finished.complete(null);
+            return;
+        }
+        var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (!paused) {
+            if (cancelled || cause instanceof CancellationException)
+                status.cancelled();
+            else
+                status.failed(cause);
+        }
+        finished.completeExceptionally(cause);
+    }
+
+    //the target is closed even if the journal can't be
+    private void close(FileChannel channel, boolean complete) throws IOException {
+        try {
+            if (journal != null) {
+                //complete: nothing left to resume, otherwise keep what we have for next time
+                if (complete)
+                    journal.delete();
+                else
+                    journal.close();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void whenSettled(Runnable action){
+        synchronized (this) {
+            settling = true;
+            if (fetching > 0) {
+                cleanup = action;
+                return;
+            }
+        }
+        action.run();
+    }
+
+    //false once the outcome is decided: chunks started that late don't touch the channel at all
+    private synchronized boolean enterFetch(){
+        if (settling)
+            return false;
+        fetching++;
+        return true;
+    }
+
+    private void leaveFetch(){
+        Runnable action;
+        synchronized (this) {
+            if (--fetching > 0 || cleanup == null)
+                return;
+            action = cleanup;
+            cleanup = null;
+        }
+        action.run();
+    }
+
+    //stops fetching for good, chunks in flight finish their current step
+    public void cancel(){
+        cancelled = true;
+    }
+
+    //stops fetching like cancel(), but the status stays open so the download can be resumed
+    public void pause(){
+        paused = true;
+        cancelled = true;
+    }
+
+    //copies [start, end) from the source to the same range of the target
+    private long fetch(FileChannel channel, long start, long end){
+        if (!enterFetch())
+            throw new CancellationException("download already settled");
+        try {
+            return fetchChunk(channel, start, end);
+        } finally {
+            leaveFetch();
+        }
+    }
+
+    private long fetchChunk(FileChannel channel, long start, long end){
+        //bytes of this chunk added to the status so far, taken back if the chunk doesn't make it
+        //so it isn't counted twice when it's fetched again after a resume
+        var counted = new long[1];
+        try {
+            //fetched before the restart and still intact on disk
+            if (journal != null && journal.isComplete(start, end)) {
+                if (countJournaledBytes)
+                    status.addTotalBytes(end - start);
+                return end - start;
+            }
+            var crc = journal == null ? null : new CRC32();
+            var zeroCopy = sinkMode == SinkMode.CHANNEL && source instanceof ChannelDownloadSource;
+            if (sinkMode == SinkMode.MEMORY_MAPPED)
+                fetchMapped(channel, start, end, crc, counted);
+            else if (zeroCopy)
+                fetchTransfer((ChannelDownloadSource) source, start, end, counted);
+            else
+                fetchBuffered(channel, start, end, crc, counted);
+            if (journal != null)
+                //transferTo never shows us the bytes, read them back from the page cache
+                journal.record(start, end, zeroCopy ? ProgressJournal.checksum(channel, start, end) : crc.getValue());
+        } catch (IOException e) {
+            status.addTotalBytes(-counted[0]);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException | Error e) {
+            status.addTotalBytes(-counted[0]);
+            throw e;
+        }
+        return end - start;
+    }
+
+    private void count(long[] counted, long bytes){
+        counted[0] += bytes;
+        status.addTotalBytes(bytes);
+    }
+
+    private void fetchBuffered(FileChannel channel, long start, long end, CRC32 crc, long[] counted) throws IOException {
+        var buffer = buffers.get();
+        var position = start;
+        while (position < end) {
+            checkCancelled();
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            var read = source.read(buffer, position);
+            if (read < 0)
+                throw new IOException("source ended at " + position + ", expected " + end);
+            buffer.flip();
+            if (crc != null) {
+                buffer.mark();
+                crc.update(buffer);
+                buffer.reset();
+            }
+            while (buffer.hasRemaining())
+                position += channel.write(buffer, position);
+            count(counted, read);
+        }
+    }
+
+    //zero copy: the kernel moves the bytes from source to target
+    private void fetchTransfer(ChannelDownloadSource channelSource, long start, long end, long[] counted) throws IOException {
+        //transferTo writes at the target's own position, so each chunk gets its own target channel
+        try (var chunkTarget = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            chunkTarget.position(start);
+            var position = start;
+            while (position < end) {
+                checkCancelled();
+                var transferred = channelSource.transferTo(position, Math.min(TRANSFER_STEP, end - position), chunkTarget);
+                if (transferred <= 0 && position >= source.size())
+                    throw new IOException("source ended at " + position + ", expected " + end);
+                position += transferred;
+                count(counted, transferred);
+            }
+        }
+    }
+
+    //the source reads straight into the page cache of the target, no intermediate buffer
+    private void fetchMapped(FileChannel channel, long start, long end, CRC32 crc, long[] counted) throws IOException {
+        var window = channel.map(FileChannel.MapMode.READ_WRITE, start, end - start);
+        try {
+            while (window.hasRemaining()) {
+                checkCancelled();
+                var before = window.position();
+                window.limit(Math.min(window.capacity(), before + IO_BUFFER_SIZE));
+                var read = source.read(window, start + before);
+                if (read < 0)
+                    throw new IOException("source ended at " + (start + before) + ", expected " + end);
+                window.limit(window.capacity());
+                count(counted, read);
+            }
+            if (crc != null) {
+                window.flip();
+                crc.update(window);
+            }
+        } finally {
+            MappedBuffers.flushAndUnmap(window);
+        }
+    }
+
+    private void checkCancelled(){
+        if (cancelled || settling || Thread.currentThread().isInterrupted())
+            throw new CancellationException("download cancelled");
+    }
+}
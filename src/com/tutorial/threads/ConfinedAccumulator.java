@@ -0,0 +1,64 @@
+package com.tutorial.threads;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+//Generalizes ThreadsDemo.Confinement(): every thread writes only to its own shard (no sharing, no CAS),
+//and readers merge all shards on demand, also while the writers are still running.
+//Shards register themselves the first time a thread writes. Once a writer thread has died its shard is
+//folded into a base value by the next read, so short-lived threads don't pile up shards
+public abstract class ConfinedAccumulator<S> {
+    private final ConcurrentLinkedQueue<Owned<S>> shards = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<S> local = ThreadLocal.withInitial(this::register);
+
+    //the calling thread's shard, only ever written by that thread
+    protected final S shard(){
+        return local.get();
+    }
+
+    protected abstract S newShard();
+
+    //adds a dead thread's shard to the base value, called from merge() while it holds this accumulator's monitor
+    protected abstract void retire(S shard);
+
+    private S register(){
+        var shard = newShard();
+        shards.add(new Owned<>(Thread.currentThread(), shard));
+        return shard;
+    }
+
+    //visits the live shards; subclasses merge them into the base value inside a synchronized read
+    protected final synchronized void merge(Consumer<S> visitor){
+        for (Iterator<Owned<S>> it = shards.iterator(); it.hasNext(); ) {
+            var owned = it.next();
+            //a dead thread's writes are all visible once isAlive() returned false
+            if (!owned.owner.isAlive()) {
+                it.remove();
+                retire(owned.shard);
+            } else {
+                visitor.accept(owned.shard);
+            }
+        }
+    }
+
+    //lock free, doesn't retire anything; a shard being retired right now may be missed or counted twice
+    protected final void visitWithoutLock(Consumer<S> visitor){
+        for (var owned : shards)
+            visitor.accept(owned.shard);
+    }
+
+    public final int getShardCount(){
+        return shards.size();
+    }
+
+    private static class Owned<S> {
+        final Thread owner;
+        final S shard;
+
+        Owned(Thread owner, S shard) {
+            this.owner = owner;
+            this.shard = shard;
+        }
+    }
+}
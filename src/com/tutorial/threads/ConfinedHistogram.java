@@ -0,0 +1,56 @@
+package com.tutorial.threads;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Histogram over fixed bucket bounds, each thread counts into its own buckets.
+//Bucket i counts values <= upperBounds[i] (and above the previous bound), the last bucket takes the rest
+public class ConfinedHistogram extends ConfinedAccumulator<AtomicLongArray> {
+    private final long[] upperBounds;
+    //guarded by this (see merge)
+    private final long[] retired;
+
+    public ConfinedHistogram(long... upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1])
+                throw new IllegalArgumentException("upperBounds must be increasing");
+        }
+        this.upperBounds = upperBounds.clone();
+        this.retired = new long[upperBounds.length + 1];
+    }
+
+    @Override
+    protected AtomicLongArray newShard() {
+        return new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    @Override
+    protected void retire(AtomicLongArray shard) {
+        for (int i = 0; i < retired.length; i++)
+            retired[i] += shard.get(i);
+    }
+
+    public void record(long value){
+        var bucket = Arrays.binarySearch(upperBounds, value);
+        if (bucket < 0)
+            bucket = -bucket - 1;
+        var counts = shard();
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+    }
+
+    //merged counts, one more entry than upperBounds for the overflow bucket
+    public synchronized long[] counts(){
+        var merged = new long[retired.length];
+        merge(shard -> {
+            for (int i = 0; i < merged.length; i++)
+                merged[i] += shard.get(i);
+        });
+        for (int i = 0; i < merged.length; i++)
+            merged[i] += retired[i];
+        return merged;
+    }
+
+    public long[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+}
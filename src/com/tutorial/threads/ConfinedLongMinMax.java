@@ -0,0 +1,48 @@
+package com.tutorial.threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Running min and max, each thread keeps its own pair
+public class ConfinedLongMinMax extends ConfinedAccumulator<ConfinedLongMinMax.Shard> {
+    //guarded by this (see merge)
+    private long retiredMin = Long.MAX_VALUE;
+    private long retiredMax = Long.MIN_VALUE;
+
+    @Override
+    protected Shard newShard() {
+        return new Shard();
+    }
+
+    @Override
+    protected void retire(Shard shard) {
+        retiredMin = Math.min(retiredMin, shard.min.get());
+        retiredMax = Math.max(retiredMax, shard.max.get());
+    }
+
+    public void accept(long value){
+        var shard = shard();
+        if (value < shard.min.get())
+            shard.min.lazySet(value);
+        if (value > shard.max.get())
+            shard.max.lazySet(value);
+    }
+
+    //Long.MAX_VALUE when nothing was recorded
+    public synchronized long min(){
+        var min = new long[]{Long.MAX_VALUE};
+        merge(shard -> min[0] = Math.min(min[0], shard.min.get()));
+        return Math.min(min[0], retiredMin);
+    }
+
+    //Long.MIN_VALUE when nothing was recorded
+    public synchronized long max(){
+        var max = new long[]{Long.MIN_VALUE};
+        merge(shard -> max[0] = Math.max(max[0], shard.max.get()));
+        return Math.max(max[0], retiredMax);
+    }
+
+    static class Shard {
+        final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    }
+}
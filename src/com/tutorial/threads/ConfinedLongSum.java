@@ -0,0 +1,41 @@
+package com.tutorial.threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Long sum with one single-writer slot per thread: an add is a plain read plus an ordered store, no CAS
+public class ConfinedLongSum extends ConfinedAccumulator<AtomicLong> implements Counter {
+    //written under the merge lock, volatile for approximateSum()
+    private volatile long retired;
+
+    @Override
+    protected AtomicLong newShard() {
+        return new AtomicLong();
+    }
+
+    @Override
+    protected void retire(AtomicLong shard) {
+        retired += shard.get();
+    }
+
+    @Override
+    public void add(long delta) {
+        var slot = shard();
+        //only this thread writes the slot, so no CAS is needed
+        slot.lazySet(slot.get() + delta);
+    }
+
+    @Override
+    public synchronized long sum() {
+        var total = new long[1];
+        merge(slot -> total[0] += slot.get());
+        //includes the shards merge() just retired
+        return total[0] + retired;
+    }
+
+    @Override
+    public long approximateSum() {
+        var total = new long[]{retired};
+        visitWithoutLock(slot -> total[0] += slot.get());
+        return total[0];
+    }
+}
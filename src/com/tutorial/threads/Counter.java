@@ -0,0 +1,18 @@
+package com.tutorial.threads;
+
+//64-bit counter, CounterStrategy decides how it behaves under contention
+public interface Counter {
+    void add(long delta);
+
+    default void increment(){
+        add(1);
+    }
+
+    //exact once writers are quiet, while they run it's a value the counter had at some point
+    long sum();
+
+    //may be slightly stale, but never slows down writers
+    default long approximateSum(){
+        return sum();
+    }
+}
@@ -0,0 +1,108 @@
+package com.tutorial.threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+//The ways DownloadStatus can count bytes, from the simplest to the most scalable
+public enum CounterStrategy {
+    //one monitor, every increment serializes
+    SYNCHRONIZED,
+    //same, with a ReentrantLock: doesn't pin the carrier thread when a virtual thread waits for it
+    LOCK,
+    //one CAS'ed cache line, shared by all cores
+    ATOMIC,
+    //java.util.concurrent.atomic.LongAdder
+    ADDER,
+    //padded slot per core (see StripedCounter)
+    STRIPED,
+    //one single-writer slot per thread, merged when read (see ConfinedLongSum)
+    CONFINED;
+
+    public static final String PROPERTY = "download.counter";
+
+    //-Ddownload.counter=synchronized|lock|atomic|adder|striped|confined, STRIPED when not set
+    public static CounterStrategy configured(){
+        var value = System.getProperty(PROPERTY);
+        if (value == null || value.isBlank())
+            return STRIPED;
+        return valueOf(value.trim().toUpperCase());
+    }
+
+    public Counter create(){
+        switch (this) {
+            case SYNCHRONIZED:
+                return new Counter() {
+                    private long value;
+
+                    @Override
+                    public synchronized void add(long delta) {
+                        value += delta;
+                    }
+
+                    @Override
+                    public synchronized long sum() {
+                        return value;
+                    }
+                };
+            case LOCK:
+                return new Counter() {
+                    private final Lock lock = new ReentrantLock();
+                    private long value;
+
+                    @Override
+                    public void add(long delta) {
+                        lock.lock();
+                        try {
+                            value += delta;
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+
+                    @Override
+                    public long sum() {
+                        lock.lock();
+                        try {
+                            return value;
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                };
+            case ATOMIC:
+                return new Counter() {
+                    private final AtomicLong value = new AtomicLong();
+
+                    @Override
+                    public void add(long delta) {
+                        value.addAndGet(delta);
+                    }
+
+                    @Override
+                    public long sum() {
+                        return value.get();
+                    }
+                };
+            case ADDER:
+                return new Counter() {
+                    private final LongAdder value = new LongAdder();
+
+                    @Override
+                    public void add(long delta) {
+                        value.add(delta);
+                    }
+
+                    @Override
+                    public long sum() {
+                        return value.sum();
+                    }
+                };
+            case CONFINED:
+                return new ConfinedLongSum();
+            default:
+                return new StripedCounter();
+        }
+    }
+}
@@ -1,42 +1,111 @@
 package com.tutorial.threads;
 
+import java.nio.file.Path;
 import java.sql.Time;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
 
 public class DownloadFileTask implements Runnable {
 
 
     private DownloadStatus status;
+    //real download when set, otherwise the simulated one
+    private DownloadSource source;
+    private Path target;
+    //simulated progress, kept so a paused task continues where it stopped
+    private int downloadedChunks;
+    //runs of a source-backed task so far: after the first one the status already holds the journaled bytes
+    private int runs;
+    //the next interrupt is a pause (DownloadManager), not a cancel: the status stays open
+    private volatile boolean pauseRequested;
 
     public DownloadFileTask(DownloadStatus status) {
         this.status = status;
     }
 
+    //counter strategy comes from -Ddownload.counter (see CounterStrategy)
     public DownloadFileTask() {
-        this.status = new DownloadStatus();
+        this.status = new DownloadStatus(CounterStrategy.configured());
+    }
+
+    //fetches source into target in parallel chunks (see ChunkedDownload)
+    public DownloadFileTask(DownloadSource source, Path target, DownloadStatus status) {
+        this.source = source;
+        this.target = target;
+        this.status = status;
+    }
+
+    //call right before interrupting the thread that runs this task
+    void requestPause() {
+        pauseRequested = true;
+    }
+
+    //true once per pause request
+    private boolean takePauseRequest() {
+        var pause = pauseRequested;
+        pauseRequested = false;
+        return pause;
     }
 
     @Override
     public void run() {
+        try {
+            if (source != null)
+                download();
+            else
+                simulate();
+        } catch (RuntimeException | Error e) {
+            status.failed(e);
+            throw e;
+        }
+    }
+
+    private void simulate() {
+
         String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
         System.out.println("Downloading a file : " + Thread.currentThread().getName() + " - " + timeStamp);
-        for (int i = 0 ; i<10_0000; i++) {
+        for (; downloadedChunks < 10_0000; downloadedChunks++) {
             //check for an interruption request
-            if (Thread.currentThread().isInterrupted())
+            if (Thread.currentThread().isInterrupted()) {
+                if (!takePauseRequest())
+                    status.cancelled();
                 return;
-            //status.incrementTotalBytes();
-            status.incrementTotalBytesAdder();
+            }
+            status.incrementTotalBytes();
         }
+        //also wakes up everybody waiting in awaitDone() / onDone()
         status.done();
 
-        synchronized (status){
-            status.notifyAll();
-        }
-
         System.out.println("Download completed: " + Thread.currentThread().getName());
     }
 
+    private void download() {
+        System.out.println("Downloading " + target + " : " + Thread.currentThread().getName());
+        //an interrupted download continues from its journal next time
+        var download = new ChunkedDownload(source, target, status)
+                .resumable(true)
+                .countJournaledBytes(runs++ == 0);
+        var finished = download.start();
+        try {
+            finished.get();
+            System.out.println("Download completed: " + Thread.currentThread().getName());
+        } catch (InterruptedException e) {
+            //interrupt request: stop the chunk workers as well, the status is closed unless it's a pause
+            if (takePauseRequest())
+                download.pause();
+            else
+                download.cancel();
+            //finished completes only after every chunk stopped and the journal and target are closed,
+            //so nothing is still writing once this thread is given back
+            finished.handle((done, error) -> null).join();
+        } catch (ExecutionException e) {
+            //ChunkedDownload marked the status failed already, this only makes sure
+            status.failed(e.getCause());
+            System.out.println("Download failed: " + e.getCause());
+        }
+    }
+
     public DownloadStatus getStatus() {
         return status;
     }
@@ -0,0 +1,351 @@
+package com.tutorial.threads;
+
+import com.tutorial.executors.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+//Queues download tasks and runs at most maxActive of them (and at most maxPerHost per host) at a time.
+//Next to run is the highest priority; within a priority the host with the fewest active downloads,
+//then the one waiting longest, so one busy host can't starve the others.
+//Pause and cancel interrupt the task, which stops at the interrupt check in DownloadFileTask.run()
+public class DownloadManager {
+    private final ExecutorService executor;
+    private final int maxActive;
+    private final int maxPerHost;
+
+    //guarded by this; lock order is always manager first, then a Download
+    private final List<Download> pending = new ArrayList<>();
+    private final List<Download> active = new ArrayList<>();
+    private final List<Download> paused = new ArrayList<>();
+    private final Map<String, Integer> activePerHost = new HashMap<>();
+    private long sequence;
+    private long completed;
+    private boolean shutdown;
+
+    public DownloadManager(ExecutorService executor, int maxActive, int maxPerHost) {
+        if (maxActive < 1 || maxPerHost < 1)
+            throw new IllegalArgumentException("maxActive and maxPerHost must be positive");
+        this.executor = executor;
+        this.maxActive = maxActive;
+        this.maxPerHost = maxPerHost;
+    }
+
+    //virtual threads when the JDK has them, otherwise a pool of maxActive platform threads
+    public DownloadManager(int maxActive, int maxPerHost) {
+        this(defaultExecutor(maxActive), maxActive, maxPerHost);
+    }
+
+    private static ExecutorService defaultExecutor(int maxActive){
+        var virtualThreads = VirtualThreads.newPerTaskExecutor();
+        return virtualThreads != null ? virtualThreads : Executors.newFixedThreadPool(maxActive);
+    }
+
+    //higher priority runs first
+    public synchronized Download submit(String host, int priority, DownloadFileTask task){
+        if (shutdown)
+            throw new RejectedExecutionException("download manager is shut down");
+        var download = new Download(host, priority, sequence++, task);
+        pending.add(download);
+        dispatch();
+        return download;
+    }
+
+    public Download submit(String host, DownloadFileTask task){
+        return submit(host, 0, task);
+    }
+
+    //starts pending downloads while there are free slots
+    private synchronized void dispatch(){
+        while (active.size() < maxActive) {
+            var next = pickNext();
+            if (next == null)
+                return;
+            pending.remove(next);
+            active.add(next);
+            activePerHost.merge(next.host, 1, Integer::sum);
+            //under its lock, so a pause() or cancel() racing with us sees either PENDING or RUNNING
+            synchronized (next) {
+                next.state = State.RUNNING;
+                next.scheduled = true;
+            }
+            try {
+                executor.execute(() -> run(next));
+            } catch (RejectedExecutionException e) {
+                synchronized (next) {
+                    next.state = State.FAILED;
+                }
+                finished(next);
+            }
+        }
+    }
+
+    //must hold this
+    private Download pickNext(){
+        Download best = null;
+        for (var candidate : pending) {
+            var hostActive = activePerHost.getOrDefault(candidate.host, 0);
+            if (hostActive >= maxPerHost)
+                continue;
+            if (best == null || isBefore(candidate, hostActive, best))
+                best = candidate;
+        }
+        return best;
+    }
+
+    private boolean isBefore(Download candidate, int candidateHostActive, Download best){
+        if (candidate.priority != best.priority)
+            return candidate.priority > best.priority;
+        var bestHostActive = activePerHost.getOrDefault(best.host, 0);
+        if (candidateHostActive != bestHostActive)
+            return candidateHostActive < bestHostActive;
+        return candidate.sequence < best.sequence;
+    }
+
+    private void run(Download download){
+        synchronized (download) {
+            //paused or cancelled before it got a thread: finished() sorts it out
+            if (download.state == State.RUNNING)
+                download.thread = Thread.currentThread();
+        }
+        try {
+            if (download.thread == Thread.currentThread())
+                download.task.run();
+        } finally {
+            finished(download);
+        }
+    }
+
+    //the download left its thread (or never got one), decides where it goes next
+    private void finished(Download download){
+        State outcome;
+        synchronized (this) {
+            synchronized (download) {
+                if (download.thread == Thread.currentThread()) {
+                    download.thread = null;
+                    //don't leak our own interrupt to the next task on this thread
+                    Thread.interrupted();
+                }
+                download.scheduled = false;
+                if (download.state == State.RUNNING)
+                    download.state = download.task.getStatus().isDone() ? State.COMPLETED : State.FAILED;
+                if (download.state == State.PAUSED) {
+                    if (shutdown)
+                        //nothing could run it again
+                        download.state = State.CANCELLED;
+                    else if (download.resumeRequested)
+                        //resumed while it was still stopping: straight back into the queue
+                        download.state = State.PENDING;
+                }
+                download.resumeRequested = false;
+                outcome = download.state;
+            }
+            active.remove(download);
+            activePerHost.computeIfPresent(download.host, (host, count) -> count == 1 ? null : count - 1);
+            if (outcome == State.COMPLETED)
+                completed++;
+            if (outcome == State.PENDING)
+                pending.add(download);
+            if (outcome == State.PAUSED)
+                paused.add(download);
+            dispatch();
+            if (shutdown && active.isEmpty() && pending.isEmpty())
+                executor.shutdown();
+        }
+        closeIfFinished(download, outcome);
+    }
+
+    private void closeIfFinished(Download download, State outcome){
+        //the task normally closed the status itself, this covers the ones that stopped without doing it
+        if (outcome == State.CANCELLED)
+            download.getStatus().cancelled();
+        else if (outcome == State.FAILED)
+            download.getStatus().failed(new IllegalStateException("download failed"));
+        if (outcome != State.PAUSED && outcome != State.PENDING && outcome != State.RUNNING)
+            download.result.complete(download);
+    }
+
+    public synchronized int getActiveCount() {
+        return active.size();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    //bytes of every download currently running, cheap approximate reads
+    public long getActiveTotalBytes(){
+        List<Download> running;
+        synchronized (this) {
+            running = new ArrayList<>(active);
+        }
+        long total = 0;
+        for (var download : running)
+            total += download.getStatus().getApproximateTotalBytes();
+        return total;
+    }
+
+    //no new downloads, the queued ones still run; paused ones are cancelled since nothing could resume them
+    public void shutdown(){
+        List<Download> cancelled;
+        synchronized (this) {
+            shutdown = true;
+            cancelled = cancelAll(paused);
+            if (active.isEmpty() && pending.isEmpty())
+                executor.shutdown();
+        }
+        for (var download : cancelled)
+            closeIfFinished(download, State.CANCELLED);
+    }
+
+    //cancels everything, queued, paused and running
+    public void shutdownNow(){
+        List<Download> running;
+        List<Download> cancelled;
+        synchronized (this) {
+            shutdown = true;
+            cancelled = cancelAll(pending);
+            cancelled.addAll(cancelAll(paused));
+            running = new ArrayList<>(active);
+        }
+        for (var download : cancelled)
+            closeIfFinished(download, State.CANCELLED);
+        for (var download : running)
+            download.cancel();
+        executor.shutdown();
+    }
+
+    //must hold this, empties the list
+    private List<Download> cancelAll(List<Download> downloads){
+        var cancelled = new ArrayList<>(downloads);
+        downloads.clear();
+        for (var download : cancelled) {
+            synchronized (download) {
+                download.state = State.CANCELLED;
+            }
+        }
+        return cancelled;
+    }
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    public class Download {
+        private final String host;
+        private final int priority;
+        private final long sequence;
+        private final DownloadFileTask task;
+        private final CompletableFuture<Download> result = new CompletableFuture<>();
+        //guarded by this
+        private State state = State.PENDING;
+        //handed to the executor and not through finished() yet; thread is only set once run() started
+        private boolean scheduled;
+        private Thread thread;
+        private boolean resumeRequested;
+
+        private Download(String host, int priority, long sequence, DownloadFileTask task) {
+            this.host = host;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        //a running download stops at its next interrupt check and keeps its progress
+        public void pause(){
+            synchronized (DownloadManager.this) {
+                synchronized (this) {
+                    if (state == State.RUNNING) {
+                        state = State.PAUSED;
+                        if (thread != null) {
+                            //keeps the status open, unlike the interrupt of a cancel
+                            task.requestPause();
+                            thread.interrupt();
+                        }
+                    } else if (state == State.PAUSED) {
+                        //paused, resumed and paused again before it stopped: stays paused
+                        resumeRequested = false;
+                    } else if (state == State.PENDING && pending.remove(this)) {
+                        state = State.PAUSED;
+                        paused.add(this);
+                    }
+                }
+            }
+        }
+
+        //continues from the journal (source-backed tasks) or the last chunk (simulated ones)
+        public void resume(){
+            synchronized (DownloadManager.this) {
+                synchronized (this) {
+                    if (state != State.PAUSED)
+                        return;
+                    if (scheduled) {
+                        //still stopping, or not even started: finished() requeues it once run() returned
+                        resumeRequested = true;
+                        return;
+                    }
+                    state = State.PENDING;
+                }
+                paused.remove(this);
+                pending.add(this);
+                dispatch();
+            }
+        }
+
+        public void cancel(){
+            synchronized (DownloadManager.this) {
+                synchronized (this) {
+                    if (state == State.RUNNING || (state == State.PAUSED && scheduled)) {
+                        //finished() completes it once the task stopped
+                        state = State.CANCELLED;
+                        if (thread != null)
+                            thread.interrupt();
+                        return;
+                    }
+                    if (state != State.PENDING && state != State.PAUSED)
+                        return;
+                    state = State.CANCELLED;
+                }
+                pending.remove(this);
+                paused.remove(this);
+            }
+            closeIfFinished(this, State.CANCELLED);
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        public DownloadStatus getStatus() {
+            return task.getStatus();
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        //completes when the download completed, failed or was cancelled (not when paused)
+        public CompletableFuture<Download> onFinished() {
+            return result.copy();
+        }
+    }
+}
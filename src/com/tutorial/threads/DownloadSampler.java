@@ -0,0 +1,168 @@
+package com.tutorial.threads;
+
+import com.tutorial.executors.AsyncTimer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//Samples registered downloads on the shared timer and derives throughput from the byte totals:
+//instantaneous rate, exponentially weighted moving average, ETA and stall detection.
+//It only reads the counters (approximate reads), the increment path doesn't know it exists.
+//Read the latest numbers with getRate(), or get them pushed with addListener()
+public class DownloadSampler {
+    private final long periodNanos;
+    //time constant of the moving average, older rates fade out over roughly this long
+    private final double smoothingNanos;
+    private final long stallAfterNanos;
+    private final Map<DownloadStatus, Tracked> tracked = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> sampler;
+
+    public DownloadSampler(Duration period, Duration smoothing, Duration stallAfter) {
+        this.periodNanos = period.toNanos();
+        this.smoothingNanos = smoothing.toNanos();
+        this.stallAfterNanos = stallAfter.toNanos();
+        this.sampler = AsyncTimer.scheduleAtFixedRate(this::sampleAll, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    //sample every second, average over 5 seconds, stalled after 10 seconds without progress
+    public DownloadSampler() {
+        this(Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(10));
+    }
+
+    //expectedBytes <= 0 when the size is unknown (no ETA then)
+    public void register(DownloadStatus status, long expectedBytes){
+        tracked.putIfAbsent(status, new Tracked(expectedBytes, status.getApproximateTotalBytes()));
+    }
+
+    public void unregister(DownloadStatus status){
+        tracked.remove(status);
+    }
+
+    //latest sample, null if not registered or not sampled yet
+    public Rate getRate(DownloadStatus status){
+        var entry = tracked.get(status);
+        return entry == null ? null : entry.latest;
+    }
+
+    //called on the timer thread after every sample, keep it short
+    public void addListener(DownloadStatus status, Consumer<Rate> listener){
+        var entry = tracked.get(status);
+        if (entry == null)
+            throw new IllegalStateException("status is not registered");
+        entry.listeners.add(listener);
+    }
+
+    public void stop(){
+        sampler.cancel(false);
+    }
+
+    private void sampleAll(){
+        var now = System.nanoTime();
+        for (var entry : tracked.entrySet()) {
+            var status = entry.getKey();
+            //read first: a download that ended gets its final total in this sample
+            var finished = status.isFinished();
+            var rate = entry.getValue().sample(status.getApproximateTotalBytes(), now, finished);
+            for (var listener : entry.getValue().listeners) {
+                try {
+                    listener.accept(rate);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            //completed, failed or cancelled: one last sample with the final total, then forget it
+            if (finished)
+                tracked.remove(status);
+        }
+    }
+
+    //only touched by the timer thread, except `latest` which is published to readers
+    private class Tracked {
+        private final long expectedBytes;
+        private final CopyOnWriteArrayList<Consumer<Rate>> listeners = new CopyOnWriteArrayList<>();
+        private long lastBytes;
+        private long lastSampleAt = System.nanoTime();
+        private long lastProgressAt = lastSampleAt;
+        private double average = Double.NaN;
+        private volatile Rate latest;
+
+        Tracked(long expectedBytes, long startBytes) {
+            this.expectedBytes = expectedBytes;
+            this.lastBytes = startBytes;
+        }
+
+        Rate sample(long bytes, long now, boolean finished){
+            var elapsed = now - lastSampleAt;
+            if (elapsed <= 0)
+                return latest;
+            var instantaneous = (bytes - lastBytes) * 1e9 / elapsed;
+            //EWMA with irregular intervals: the weight of the new value depends on how long it covers
+            var alpha = 1 - Math.exp(-elapsed / smoothingNanos);
+            average = Double.isNaN(average) ? instantaneous : average + alpha * (instantaneous - average);
+            if (bytes != lastBytes)
+                lastProgressAt = now;
+            lastBytes = bytes;
+            lastSampleAt = now;
+
+            Duration eta = null;
+            if (expectedBytes > 0 && average > 0)
+                eta = Duration.ofNanos((long) (Math.max(0, expectedBytes - bytes) / average * 1e9));
+            //a finished download (or one that ended early) isn't stalled
+            var complete = finished || expectedBytes > 0 && bytes >= expectedBytes;
+            var stalled = !complete && now - lastProgressAt >= stallAfterNanos;
+            latest = new Rate(bytes, instantaneous, average, eta, stalled);
+            return latest;
+        }
+    }
+
+    public static class Rate {
+        private final long totalBytes;
+        private final double instantaneousBytesPerSecond;
+        private final double averageBytesPerSecond;
+        private final Duration eta;
+        private final boolean stalled;
+
+        Rate(long totalBytes, double instantaneousBytesPerSecond, double averageBytesPerSecond, Duration eta, boolean stalled) {
+            this.totalBytes = totalBytes;
+            this.instantaneousBytesPerSecond = instantaneousBytesPerSecond;
+            this.averageBytesPerSecond = averageBytesPerSecond;
+            this.eta = eta;
+            this.stalled = stalled;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        //since the previous sample
+        public double getInstantaneousBytesPerSecond() {
+            return instantaneousBytesPerSecond;
+        }
+
+        //exponentially weighted moving average
+        public double getAverageBytesPerSecond() {
+            return averageBytesPerSecond;
+        }
+
+        //null when the size is unknown or nothing arrived yet
+        public Duration getEta() {
+            return eta;
+        }
+
+        public boolean isStalled() {
+            return stalled;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes, %.0f B/s now, %.0f B/s avg, eta %s%s",
+                    totalBytes, instantaneousBytesPerSecond, averageBytesPerSecond,
+                    eta == null ? "?" : eta, stalled ? ", stalled" : "");
+        }
+    }
+}
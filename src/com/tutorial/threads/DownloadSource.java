@@ -0,0 +1,14 @@
+package com.tutorial.threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//Something we can download from by byte range, e.g. a file or an HTTP server supporting Range requests.
+//read() must be safe to call from several threads at once with different positions
+public interface DownloadSource extends Closeable {
+    long size() throws IOException;
+
+    //reads up to dst.remaining() bytes starting at position, returns -1 at the end
+    int read(ByteBuffer dst, long position) throws IOException;
+}
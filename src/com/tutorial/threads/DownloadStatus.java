@@ -1,68 +1,143 @@
 package com.tutorial.threads;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.LongAdder;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class DownloadStatus {
-  private int totalBytes;
-  private AtomicInteger atomicTotalBytes = new AtomicInteger();
+  //one counter for the bytes, how it handles contention depends on the strategy
+  private final Counter totalBytes;
+  private int totalFiles;
+  public volatile boolean isDone;
+  //explicit lock instead of a monitor: a virtual thread blocked on it unmounts instead of pinning its carrier
+  private final Lock totalFilesLock = new ReentrantLock();
+  //completed once by done(), waiters park on it instead of spinning or wait()ing on a shared monitor
+  private final CompletableFuture<DownloadStatus> completion = new CompletableFuture<>();
 
-  public int getTotalBytesAdder() {
-    return totalBytesAdder.intValue();
+  public DownloadStatus(CounterStrategy strategy) {
+    this.totalBytes = strategy.create();
   }
 
-  public void incrementTotalBytesAdder() {
-    totalBytesAdder.increment();
+  public DownloadStatus() {
+    this(CounterStrategy.configured());
   }
 
-  private LongAdder totalBytesAdder = new LongAdder();
-  private int totalFiles;
-  public volatile boolean isDone;
-  private Object totalBytesLock = new Object();
-  private Object totalFilesLock = new Object();
-
+  public long getTotalBytes() {
+    return totalBytes.sum();
+  }
 
-  public int getTotalBytes() {
-    return totalBytes;
+  //cheap read for progress displays, may lag a little behind
+  public long getApproximateTotalBytes() {
+    return totalBytes.approximateSum();
   }
 
   public void incrementTotalBytes() {
-    //every java object has a built in lock (monitor object)
-    synchronized (totalBytesLock){
-      this.totalBytes++;
-    }
+    totalBytes.increment();
   }
 
-  public void incrementAtomicTotalBytes() {
-    //++i
-    atomicTotalBytes.incrementAndGet();
+  public void addTotalBytes(long bytes) {
+    totalBytes.add(bytes);
   }
 
   public int getTotalFiles() {
-    return totalFiles;
-  }
-
-  public AtomicInteger getAtomicTotalBytes() {
-    return atomicTotalBytes;
+    totalFilesLock.lock();
+    try {
+      return totalFiles;
+    } finally {
+      totalFilesLock.unlock();
+    }
   }
 
   public void incrementTotalFiles() {
-    synchronized (totalFilesLock){
+    //always unlock in finally, unlike a synchronized block nothing releases it for us
+    totalFilesLock.lock();
+    try {
       this.totalFiles++;
+    } finally {
+      totalFilesLock.unlock();
     }
   }
 
-    //same as using synchronized(this)
-    public synchronized void incrementTotalFilesByTwo(){
-        this.totalFiles+=2;
+  //same lock as incrementTotalFiles(), otherwise the two could interleave
+  public void incrementTotalFilesByTwo(){
+    totalFilesLock.lock();
+    try {
+      this.totalFiles+=2;
+    } finally {
+      totalFilesLock.unlock();
     }
+  }
 
+  //completed successfully
   public boolean isDone() {
     return isDone;
   }
 
+  //completed, failed or cancelled: nothing will change anymore
+  public boolean isFinished() {
+    return completion.isDone();
+  }
+
+  public boolean isCancelled() {
+    return getFailure() instanceof CancellationException;
+  }
+
+  //why the download failed (a CancellationException when it was cancelled), null otherwise
+  public Throwable getFailure() {
+    if (!completion.isCompletedExceptionally())
+      return null;
+    try {
+      completion.join();
+      return null;
+    } catch (CompletionException e) {
+      return e.getCause();
+    } catch (CancellationException e) {
+      return e;
+    }
+  }
+
   public void done() {
     isDone = true;
+    completion.complete(this);
+  }
+
+  //the first of done() / failed() / cancelled() wins, the others are ignored
+  public void failed(Throwable cause) {
+    completion.completeExceptionally(cause);
+  }
+
+  public void cancelled() {
+    completion.completeExceptionally(new CancellationException("download cancelled"));
+  }
+
+  //true if the download finished (done, failed or cancelled) within the timeout, false otherwise
+  public boolean awaitDone(Duration timeout) throws InterruptedException {
+    try {
+      completion.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException | CancellationException e) {
+      return true;
+    }
+  }
+
+  //read-only view, completes exceptionally when the download failed or was cancelled
+  public CompletableFuture<DownloadStatus> onDone() {
+    return completion.copy();
+  }
+
+  //runs once the download finished, whatever the outcome (check isDone() / getFailure()),
+  //on the thread that finished it, or right away if it's finished already
+  public void addDoneListener(Consumer<DownloadStatus> listener) {
+    completion.whenComplete((status, e) -> listener.accept(this));
   }
 
 }
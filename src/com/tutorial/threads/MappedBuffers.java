@@ -0,0 +1,43 @@
+package com.tutorial.threads;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+//There is no public API to unmap a MappedByteBuffer before it is garbage collected,
+//sun.misc.Unsafe.invokeCleaner (jdk.unsupported) is the accepted workaround.
+//Without it the mapping just lives until GC
+class MappedBuffers {
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+
+    static {
+        Object instance = null;
+        Method method = null;
+        try {
+            var type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            instance = field.get(null);
+            method = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            instance = null;
+            method = null;
+        }
+        unsafe = instance;
+        invokeCleaner = method;
+    }
+
+    //writes dirty pages back to the file and releases the mapping, the buffer must not be used afterwards
+    static void flushAndUnmap(MappedByteBuffer buffer){
+        buffer.force();
+        if (invokeCleaner == null)
+            return;
+        try {
+            invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException e) {
+            //leave it to the GC
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.tutorial.threads;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//Append-only record of the chunks that made it to disk, kept next to the target as <target>.journal.
+//Layout: header [magic][source size][chunk size], then one [start][end][crc32] record per finished chunk.
+//Every syncEvery records the target and then the journal are fsynced. A crash can still leave a record
+//whose data never hit the disk, that's why resumed chunks are verified against their checksum
+public class ProgressJournal implements AutoCloseable {
+    private static final long MAGIC = 0x4A45464A524E4C31L;
+    private static final int HEADER_SIZE = 3 * Long.BYTES;
+    private static final int RECORD_SIZE = 3 * Long.BYTES;
+    public static final int DEFAULT_SYNC_EVERY = 16;
+
+    private final Path path;
+    private final FileChannel journal;
+    private final FileChannel target;
+    private final int syncEvery;
+    //chunk start -> [end, crc] as found when the journal was opened
+    private final Map<Long, long[]> recorded;
+    //guarded by this
+    private int unsynced;
+
+    private ProgressJournal(Path path, FileChannel journal, FileChannel target, int syncEvery, Map<Long, long[]> recorded) {
+        this.path = path;
+        this.journal = journal;
+        this.target = target;
+        this.syncEvery = syncEvery;
+        this.recorded = recorded;
+    }
+
+    public static Path pathFor(Path target){
+        return target.resolveSibling(target.getFileName() + ".journal");
+    }
+
+    //reuses an existing journal for the same source size and chunk size, starts a new one otherwise
+    public static ProgressJournal open(Path targetPath, FileChannel target, long sourceSize, int chunkSize, int syncEvery) throws IOException {
+        var path = pathFor(targetPath);
+        var journal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            var recorded = read(journal, sourceSize, chunkSize);
+            if (recorded == null) {
+                journal.truncate(0);
+                var header = ByteBuffer.allocate(HEADER_SIZE).putLong(MAGIC).putLong(sourceSize).putLong(chunkSize).flip();
+                while (header.hasRemaining())
+                    journal.write(header, journal.size());
+                journal.force(false);
+                recorded = new HashMap<>();
+            }
+            journal.position(journal.size());
+            return new ProgressJournal(path, journal, target, syncEvery, recorded);
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    //null when there is no usable journal
+    private static Map<Long, long[]> read(FileChannel journal, long sourceSize, int chunkSize) throws IOException {
+        if (journal.size() < HEADER_SIZE)
+            return null;
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        journal.read(header, 0);
+        header.flip();
+        if (header.getLong() != MAGIC || header.getLong() != sourceSize || header.getLong() != chunkSize)
+            return null;
+        //a torn record at the end (crash mid-append) is cut off
+        var records = (journal.size() - HEADER_SIZE) / RECORD_SIZE;
+        journal.truncate(HEADER_SIZE + records * RECORD_SIZE);
+        var buffer = ByteBuffer.allocate((int) (records * RECORD_SIZE));
+        while (buffer.hasRemaining()) {
+            if (journal.read(buffer, HEADER_SIZE + buffer.position()) < 0)
+                break;
+        }
+        buffer.flip();
+        var recorded = new HashMap<Long, long[]>();
+        while (buffer.remaining() >= RECORD_SIZE)
+            recorded.put(buffer.getLong(), new long[]{buffer.getLong(), buffer.getLong()});
+        return recorded;
+    }
+
+    //true if the journal lists this chunk and the bytes on disk still match its checksum
+    public boolean isComplete(long start, long end) throws IOException {
+        var record = recorded.get(start);
+        if (record == null || record[0] != end)
+            return false;
+        return checksum(target, start, end) == record[1];
+    }
+
+    public synchronized void record(long start, long end, long crc) throws IOException {
+        var buffer = ByteBuffer.allocate(RECORD_SIZE).putLong(start).putLong(end).putLong(crc).flip();
+        while (buffer.hasRemaining())
+            journal.write(buffer);
+        if (++unsynced >= syncEvery)
+            sync();
+    }
+
+    //data first, so a durable record never points at data that isn't
+    public synchronized void sync() throws IOException {
+        target.force(false);
+        journal.force(false);
+        unsynced = 0;
+    }
+
+    //download finished, the journal isn't needed anymore
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal.isOpen()) {
+            try {
+                sync();
+            } finally {
+                journal.close();
+            }
+        }
+    }
+
+    static long checksum(FileChannel channel, long start, long end) throws IOException {
+        var crc = new CRC32();
+        var buffer = ByteBuffer.allocateDirect(ChunkedDownload.IO_BUFFER_SIZE);
+        var position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            var read = channel.read(buffer, position);
+            if (read < 0)
+                return -1;
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,56 @@
+package com.tutorial.threads;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//One slot per core, each on its own cache line so cores never fight over a line (false sharing).
+//A thread always lands on the same slot, so with enough slots there is almost no contention.
+//Unlike LongAdder the slots exist up front: no allocation or resizing on the increment path
+public class StripedCounter implements Counter {
+    //16 longs = 128 bytes, covers adjacent-line prefetching on x86 as well
+    private static final int PADDING = 16;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    public StripedCounter(int stripes) {
+        if (stripes < 1)
+            throw new IllegalArgumentException("stripes must be positive");
+        //power of two so the slot is a mask instead of a modulo
+        var size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.slots = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+    }
+
+    //twice the cores, so threads that share a slot are rare
+    public StripedCounter() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void add(long delta) {
+        slots.getAndAdd(slotOf(Thread.currentThread()), delta);
+    }
+
+    private int slotOf(Thread thread){
+        //thread ids are sequential, mix them so neighbours don't pile up
+        var h = thread.getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (h >>> 32) & mask) * PADDING;
+    }
+
+    @Override
+    public long sum() {
+        long total = 0;
+        for (int i = 0; i < slots.length(); i += PADDING)
+            total += slots.get(i);
+        return total;
+    }
+
+    //no ordering guarantees, just the latest values this core happens to see
+    @Override
+    public long approximateSum() {
+        long total = 0;
+        for (int i = 0; i < slots.length(); i += PADDING)
+            total += slots.getOpaque(i);
+        return total;
+    }
+}
@@ -0,0 +1,65 @@
+package com.tutorial.threads;
+
+import com.tutorial.executors.VirtualThreads;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//What the ThreadsDemo scenarios run their downloads on
+public enum ThreadMode {
+    //a new OS thread per download, ~1 MB of stack each
+    PLATFORM,
+    //a new virtual thread per download, falls back to PLATFORM on JDKs without them
+    VIRTUAL,
+    //a fixed pool with one thread per core, downloads queue up behind each other
+    POOL;
+
+    public static final String PROPERTY = "download.threads";
+
+    //-Ddownload.threads=platform|virtual|pool, VIRTUAL when not set
+    public static ThreadMode configured(){
+        var value = System.getProperty(PROPERTY);
+        if (value == null || value.isBlank())
+            return VIRTUAL;
+        return valueOf(value.trim().toUpperCase());
+    }
+
+    //what this mode actually runs on: PLATFORM for VIRTUAL on JDKs without virtual threads
+    //(or once creating them failed)
+    public ThreadMode effective(){
+        return this == VIRTUAL && !VirtualThreads.isAvailable() ? PLATFORM : this;
+    }
+
+    //new thread for every call in PLATFORM and VIRTUAL mode
+    public ThreadFactory factory(){
+        var virtual = effective() == VIRTUAL ? VirtualThreads.factory("download-") : null;
+        if (virtual != null)
+            return virtual;
+        var count = new AtomicInteger();
+        return runnable -> new Thread(runnable, "download-" + count.getAndIncrement());
+    }
+
+    //caller shuts it down
+    public ExecutorService newExecutor(){
+        switch (effective()) {
+            case POOL:
+                return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), factory());
+            case VIRTUAL:
+                //null if the reflective call failed after all, effective() says PLATFORM from then on
+                var virtual = VirtualThreads.newPerTaskExecutor();
+                return virtual != null ? virtual : threadPerTask();
+            default:
+                return threadPerTask();
+        }
+    }
+
+    private ExecutorService threadPerTask(){
+        //no idle time: every thread ends with its task, so every task gets its own thread
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, new SynchronousQueue<>(), factory());
+    }
+}
@@ -1,8 +1,20 @@
 package com.tutorial.threads;
 
+import com.tutorial.collections.ConcurrentBag;
+
+import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.file.Files;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class ThreadsDemo {
     public static void showCount(){
@@ -10,17 +22,63 @@ public class ThreadsDemo {
         System.out.println(Runtime.getRuntime().availableProcessors());
     }
     public static void show(){
+        show(ThreadMode.configured());
+    }
+    public static void show(ThreadMode mode){
         System.out.println(Thread.currentThread().getName());
+        //at most 4 downloads at once instead of one new thread each
+        var manager = new DownloadManager(mode.newExecutor(), 4, 2);
         for (int i = 0 ; i<10; i++) {
-            Thread thread = new Thread(new DownloadFileTask());
-            thread.start();
+            manager.submit("host-" + (i % 3), new DownloadFileTask());
         }
+        manager.shutdown();
     }
     public static void pauseThread(){
+        var manager = new DownloadManager(4, 4);
+        List<DownloadManager.Download> downloads = new ArrayList<>();
         for (int i = 0 ; i<10; i++) {
-            Thread thread = new Thread(new DownloadFileTask());
-            thread.start();
+            //first five are more urgent
+            downloads.add(manager.submit("host", i < 5 ? 1 : 0, new DownloadFileTask()));
         }
+        var first = downloads.get(0);
+        first.pause();
+        System.out.println("Paused : " + first.getState() + " at " + first.getStatus().getTotalBytes() + " bytes");
+        first.resume();
+        downloads.get(9).cancel();
+        for (var download : downloads)
+            download.onFinished().join();
+        System.out.println("Completed : " + manager.getCompletedCount());
+        manager.shutdown();
+    }
+    //pause and resume before the executor got to run the download: it must still run exactly once
+    public static void pauseBeforeStart(){
+        var executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        var gate = new CountDownLatch(1);
+        //keeps the only thread busy, so the dispatched download waits in the queue
+        executor.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        var manager = new DownloadManager(executor, 1, 1);
+        var runs = new AtomicInteger();
+        var download = manager.submit("host", new DownloadFileTask() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                super.run();
+            }
+        });
+        download.pause();
+        download.resume();
+        gate.countDown();
+        download.onFinished().join();
+        manager.shutdown();
+        System.out.println("Runs : " + runs + ", completed : " + manager.getCompletedCount());
+        if (runs.get() != 1 || manager.getCompletedCount() != 1)
+            throw new IllegalStateException("download ran " + runs + " times");
     }
     public static void joinThread(){
         Thread thread = new Thread(new DownloadFileTask());
@@ -45,40 +103,145 @@ public class ThreadsDemo {
         thread.interrupt();
     }
 
-    public static void raceCondition(){
-        var status = new DownloadStatus();
-        List<Thread> threads = new ArrayList<>();
-        for (int i = 0; i<10 ; i++){
-            var thread = new Thread(new DownloadFileTask(status));
-            thread.start();
-            threads.add(thread);
+    public static void chunkedDownload(){
+        try {
+            //64 MB of random bytes as the "remote" file
+            var remote = Files.createTempFile("remote", ".bin");
+            var bytes = new byte[64 * 1024 * 1024];
+            new Random().nextBytes(bytes);
+            Files.write(remote, bytes);
+            var local = Files.createTempFile("local", ".bin");
+
+            var status = new DownloadStatus();
+            try (var source = new FileDownloadSource(remote)) {
+                var thread = new Thread(new DownloadFileTask(source, local, status));
+                thread.start();
+                thread.join();
+            }
+            System.out.println(status.getTotalBytes() + " bytes, same content: " + (Files.mismatch(remote, local) == -1));
+            Files.delete(remote);
+            Files.delete(local);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
         }
+    }
 
-        for (var thread:threads){
-            try {
+    public static void sampledDownload(){
+        try {
+            var remote = Files.createTempFile("remote", ".bin");
+            Files.write(remote, new byte[256 * 1024 * 1024]);
+            var local = Files.createTempFile("local", ".bin");
+
+            var sampler = new DownloadSampler(Duration.ofMillis(100), Duration.ofMillis(500), Duration.ofSeconds(2));
+            var status = new DownloadStatus();
+            sampler.register(status, Files.size(remote));
+            sampler.addListener(status, rate -> System.out.println(rate));
+            try (var source = new FileDownloadSource(remote)) {
+                new ChunkedDownload(source, local, status).start().join();
+            }
+            sampler.stop();
+            Files.delete(remote);
+            Files.delete(local);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void mappedDownload(){
+        try {
+            var remote = Files.createTempFile("remote", ".bin");
+            var bytes = new byte[64 * 1024 * 1024];
+            new Random().nextBytes(bytes);
+            Files.write(remote, bytes);
+            var local = Files.createTempFile("local", ".bin");
+
+            //payload goes from the source straight into mapped windows of the target
+            var status = new DownloadStatus();
+            try (var source = new FileDownloadSource(remote)) {
+                new ChunkedDownload(source, local, status, ChunkedDownload.SinkMode.MEMORY_MAPPED).start().join();
+            }
+            System.out.println(status.getTotalBytes() + " bytes, same content: " + (Files.mismatch(remote, local) == -1));
+            Files.delete(remote);
+            Files.delete(local);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void resumeDownload(){
+        try {
+            var remote = Files.createTempFile("remote", ".bin");
+            var bytes = new byte[256 * 1024 * 1024];
+            new Random().nextBytes(bytes);
+            Files.write(remote, bytes);
+            var local = Files.createTempFile("local", ".bin");
+
+            try (var source = new FileDownloadSource(remote)) {
+                //interrupted half way, the journal remembers the finished chunks
+                var thread = new Thread(new DownloadFileTask(source, local, new DownloadStatus()));
+                thread.start();
+                Thread.sleep(100);
+                thread.interrupt();
                 thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+
+                //only the missing chunks are fetched again
+                var status = new DownloadStatus();
+                new ChunkedDownload(source, local, status).resumable(true).start().join();
+                System.out.println(status.getTotalBytes() + " bytes, same content: " + (Files.mismatch(remote, local) == -1));
             }
+            Files.delete(remote);
+            Files.delete(local);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void raceCondition(){
+        raceCondition(ThreadMode.configured());
+    }
+
+    public static void raceCondition(ThreadMode mode){
+        //lock based like SYNCHRONIZED, but virtual threads waiting for it don't pin their carriers
+        var status = new DownloadStatus(CounterStrategy.LOCK);
+        var manager = new DownloadManager(mode.newExecutor(), 10, 10);
+        List<DownloadManager.Download> downloads = new ArrayList<>();
+        for (int i = 0; i<10 ; i++){
+            downloads.add(manager.submit("host", new DownloadFileTask(status)));
+        }
+
+        for (var download:downloads){
+            download.onFinished().join();
         }
+        manager.shutdown();
 
         System.out.println(status.getTotalBytes());
 
     }
 
     public static void Confinement(){
+        //one status, but every thread counts into its own shard (see ConfinedLongSum)
+        var status = new DownloadStatus(CounterStrategy.CONFINED);
+        //download times in ms: <=1, <=5, <=10, <=50, more
+        var durations = new ConfinedHistogram(1, 5, 10, 50);
+        var slowest = new ConfinedLongMinMax();
         List<Thread> threads = new ArrayList<>();
-        List<DownloadFileTask> tasks = new ArrayList<>();
 
         for (int i = 0; i<10 ; i++){
-            var task = new DownloadFileTask();
-            tasks.add(task);
-
-            var thread = new Thread(task);
+            var task = new DownloadFileTask(status);
+            var thread = new Thread(() -> {
+                var start = System.nanoTime();
+                task.run();
+                var millis = (System.nanoTime() - start) / 1_000_000;
+                durations.record(millis);
+                slowest.accept(millis);
+            });
             thread.start();
             threads.add(thread);
         }
 
+        //merged totals can be read while the threads are still running
+        System.out.println("So far : " + status.getApproximateTotalBytes());
+
         for (var thread:threads){
             try {
                 thread.join();
@@ -87,37 +250,29 @@ public class ThreadsDemo {
             }
         }
 
-        var totalBytes = tasks.stream().map(t -> t.getStatus().getTotalBytes()).reduce(0, (a, b) -> a+b);
-
-        System.out.println(totalBytes);
+        System.out.println(status.getTotalBytes());
+        System.out.println(Arrays.toString(durations.counts()) + " slowest : " + slowest.max() + "ms");
 
     }
 
     public static void volatileKeyword(){
         DownloadStatus status = new DownloadStatus();
         var thread1 = new Thread(new DownloadFileTask(status));
-        var thread2 = new Thread(() -> {
-           while(!status.isDone()){}
-            System.out.println(status.getTotalBytes());
-        });
+        //no busy loop: the listener runs once the download is done
+        status.addDoneListener(s -> System.out.println(s.getTotalBytes()));
         thread1.start();
-        thread2.start();
     }
 
     public static void waitAndNotify(){
         DownloadStatus status = new DownloadStatus();
         var thread1 = new Thread(new DownloadFileTask(status));
         var thread2 = new Thread(() -> {
-            while(!status.isDone()){
-                //java expects a sync block to surround the object that will change
-                synchronized(status){
-                    try {
-                        //so we dont waste CPU cycles in the while loop
-                        status.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
+            try {
+                //parks without wasting CPU cycles, and can't miss the wakeup like wait/notify
+                while (!status.awaitDone(Duration.ofSeconds(1)))
+                    System.out.println("Still downloading...");
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
             System.out.println(status.getTotalBytes());
         });
@@ -127,45 +282,103 @@ public class ThreadsDemo {
 
 
     public static void testAtomicFields(){
-        var status = new DownloadStatus();
-        List<Thread> threads = new ArrayList<>();
-        for (int i = 0; i<10 ; i++){
-            var thread = new Thread(new DownloadFileTask(status));
-            thread.start();
-            threads.add(thread);
-        }
+        testAtomicFields(ThreadMode.configured(), 10);
+    }
 
-        for (var thread:threads){
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+    public static void testAtomicFields(ThreadMode mode, int downloads){
+        var status = new DownloadStatus(CounterStrategy.ATOMIC);
+        runDownloads(mode.newExecutor(), downloads, () -> new DownloadFileTask(status));
+        System.out.println(status.getTotalBytes());
+    }
 
-        System.out.println(status.getAtomicTotalBytes());
+    public static void testAdderFields(){
+        testAdderFields(ThreadMode.configured(), 10);
+    }
 
+    public static void testAdderFields(ThreadMode mode, int downloads){
+        var status = new DownloadStatus(CounterStrategy.ADDER);
+        runDownloads(mode.newExecutor(), downloads, () -> new DownloadFileTask(status));
+        System.out.println(status.getTotalBytes());
     }
 
-    public static void testAdderFields(){
-        var status = new DownloadStatus();
-        List<Thread> threads = new ArrayList<>();
-        for (int i = 0; i<10 ; i++){
-            var thread = new Thread(new DownloadFileTask(status));
-            thread.start();
-            threads.add(thread);
+    public static void testStripedFields(){
+        testStripedFields(ThreadMode.configured(), 10);
+    }
+
+    public static void testStripedFields(ThreadMode mode, int downloads){
+        var status = new DownloadStatus(CounterStrategy.STRIPED);
+        runDownloads(mode.newExecutor(), downloads, () -> new DownloadFileTask(status));
+        System.out.println(status.getTotalBytes());
+    }
+
+    //how long runDownloads() waits before it gives up on the rest
+    private static final Duration DOWNLOADS_TIMEOUT = Duration.ofMinutes(1);
+
+    //starts every download on the executor, shuts it down and waits for all of them;
+    //false if they didn't all finish in time (the ones left are interrupted)
+    private static boolean runDownloads(ExecutorService executor, int downloads, Supplier<Runnable> task){
+        for (int i = 0; i < downloads; i++)
+            executor.execute(task.get());
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(DOWNLOADS_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+                return true;
+            System.out.println("Not done after " + DOWNLOADS_TIMEOUT.toSeconds() + "s, stopping "
+                    + executor.shutdownNow().size() + " downloads that never started and the running ones");
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
+        return false;
+    }
 
-        for (var thread:threads){
+    //one OS thread per download beyond this is asking the OS for trouble
+    private static final int MAX_PLATFORM_DOWNLOADS = 2_000;
+    //a pool runs one round of downloads per thread at a time, a second each
+    private static final int MAX_POOL_ROUNDS = 10;
+
+    public static void manyDownloads(){
+        manyDownloads(ThreadMode.configured(), 100_000);
+    }
+
+    //downloads spend most of their time waiting on the network: 100k of them are fine on virtual threads.
+    //Everything else gets capped: on platform threads the OS runs out of memory or threads long before that
+    //(that includes VIRTUAL on a JDK without virtual threads), and a pool would need hours
+    public static void manyDownloads(ThreadMode mode, int downloads){
+        var executor = mode.newExecutor();
+        //asked after newExecutor(), which may have found virtual threads unusable after all
+        var runsOn = mode.effective();
+        var limit = maxDownloads(runsOn);
+        if (downloads > limit) {
+            System.out.println("Capping " + downloads + " downloads at " + limit + ", " + mode + " runs on " + runsOn + " threads here");
+            downloads = limit;
+        }
+        var status = new DownloadStatus(CounterStrategy.ADDER);
+        var start = System.nanoTime();
+        var complete = runDownloads(executor, downloads, () -> () -> {
             try {
-                thread.join();
+                //simulated round trip
+                Thread.sleep(1000);
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                return;
             }
-        }
-
-        System.out.println(status.getTotalBytesAdder());
+            status.addTotalBytes(1024);
+            status.incrementTotalFiles();
+        });
+        var millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(runsOn + " : " + status.getTotalFiles() + " of " + downloads + " files, " + status.getTotalBytes()
+                + " bytes in " + millis + "ms" + (complete ? "" : " (incomplete)"));
+    }
 
+    private static int maxDownloads(ThreadMode runsOn){
+        switch (runsOn) {
+            case VIRTUAL:
+                return Integer.MAX_VALUE;
+            case POOL:
+                return Runtime.getRuntime().availableProcessors() * MAX_POOL_ROUNDS;
+            default:
+                return MAX_PLATFORM_DOWNLOADS;
+        }
     }
 
     public static void synchronizedCollections() {
@@ -193,6 +406,28 @@ public class ThreadsDemo {
         System.out.println(collection);
     }
 
+    public static void appendOnlyBag() {
+        //every thread appends to its own segment, nobody waits on a shared monitor
+        Collection<Integer> collection = new ConcurrentBag<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            var first = i * 3 + 1;
+            var thread = new Thread(() -> collection.addAll(Arrays.asList(first, first + 1, first + 2)));
+            thread.start();
+            threads.add(thread);
+        }
+        for (var thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        System.out.println(collection);
+        System.out.println(collection.parallelStream().mapToInt(n -> n).sum());
+    }
+
     public static void concurrentCollections(){
         Map<Integer, String> map = new ConcurrentHashMap<>();
         map.put(1, "a");